@@ -26,6 +26,12 @@ public class EclipseUtil
         return null;
     }
 
+    // True when running without a workbench, e.g. as a command-line application,
+    // in which case nothing should try to open a dialog
+    public static boolean isHeadless() {
+        return !PlatformUI.isWorkbenchRunning();
+    }
+
     public static List<IProject> getOpenProjects() {
         IWorkspaceRoot root = ResourcesPlugin.getWorkspace().getRoot();
         IProject[] projects = root.getProjects();
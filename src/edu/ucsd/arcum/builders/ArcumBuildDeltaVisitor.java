@@ -1,5 +1,9 @@
 package edu.ucsd.arcum.builders;
 
+import java.util.ArrayList;
+import java.util.List;
+
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IResource;
 import org.eclipse.core.resources.IResourceDelta;
 import org.eclipse.core.resources.IResourceDeltaVisitor;
@@ -9,6 +13,12 @@ import edu.ucsd.arcum.interpreter.query.ProjectTraverser;
 
 public class ArcumBuildDeltaVisitor implements IResourceDeltaVisitor
 {
+    private List<IFile> changedJavaFiles;
+
+    public ArcumBuildDeltaVisitor() {
+        this.changedJavaFiles = new ArrayList<IFile>();
+    }
+
     public boolean visit(IResourceDelta delta) throws CoreException {
         IResource resource = delta.getResource();
         if (resource.getType() == IResource.FILE) {
@@ -21,7 +31,15 @@ public class ArcumBuildDeltaVisitor implements IResourceDeltaVisitor
             String filePath = resource.toString();
             System.out.printf("Delta visitor visited and marked dirty %s%n", filePath);
             ProjectTraverser.markSourceFileDirty(filePath);
+            if ("java".equals(resource.getFileExtension())) {
+                changedJavaFiles.add((IFile)resource);
+            }
         }
         return true;
     }
+
+    // The Java files that were added, changed, or removed in the delta
+    public List<IFile> getChangedJavaFiles() {
+        return changedJavaFiles;
+    }
 }
@@ -2,6 +2,8 @@ package edu.ucsd.arcum.builders;
 
 import static edu.ucsd.arcum.ArcumPlugin.DEBUG;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 
@@ -15,6 +17,7 @@ import edu.ucsd.arcum.exceptions.FatalArcumError;
 import edu.ucsd.arcum.exceptions.SourceLocation;
 import edu.ucsd.arcum.exceptions.UserCompilationProblem;
 import edu.ucsd.arcum.interpreter.query.ArcumDeclarationTable;
+import edu.ucsd.arcum.interpreter.query.EntityDataBase;
 import edu.ucsd.arcum.interpreter.query.OptionMatchTable;
 import edu.ucsd.arcum.ui.UIUtil;
 import edu.ucsd.arcum.util.SystemUtil;
@@ -30,13 +33,25 @@ public class ArcumBuilder extends IncrementalProjectBuilder
 
     public static ArcumDeclarationTable reparseArcumCode(IProject project, IProgressMonitor monitor)
         throws CoreException
+    {
+        return reparseArcumCode(project, monitor, null, Collections.<IFile> emptyList());
+    }
+
+    // Reparses the .arcum files into a new symbol table that reuses the given
+    // entity database, or populates a fresh one later if it is null. The given
+    // Java files are the ones changed since the database was populated.
+    public static ArcumDeclarationTable reparseArcumCode(IProject project,
+        IProgressMonitor monitor, EntityDataBase entityDataBase,
+        Collection<IFile> changedJavaFiles) throws CoreException
     {
         if (UIUtil.getNumberOfErrors(project) > 0) {
             throw new FatalArcumError("Project has errors, abort operation");
         }
         System.out.printf("Reparsing Arcum code in %s%n", project.getName());
 
-        ArcumDeclarationTable symbTab = ArcumDeclarationTable.newSymbolTable(project);
+        ArcumDeclarationTable symbTab;
+        symbTab = ArcumDeclarationTable.newSymbolTable(project, entityDataBase,
+            changedJavaFiles);
         monitor.beginTask("Compiling Arcum Source Files", IProgressMonitor.UNKNOWN);
         ArcumSourceBuilder arcumSourceBuilder = new ArcumSourceBuilder(symbTab, monitor);
         project.accept(arcumSourceBuilder, 0);
@@ -95,12 +110,22 @@ public class ArcumBuilder extends IncrementalProjectBuilder
     // done its passes, which may have either been full or incremental.
     private void fullBuild(IProgressMonitor monitor) throws CoreException {
         if (DEBUG) System.out.printf("Starting fullBuild%n");
+        rebuild(monitor, null, Collections.<IFile> emptyList());
+    }
 
+    // Rebuilds the .arcum files and rematches all concepts. A null entity
+    // database means the Java code is traversed again from scratch; otherwise
+    // the changed Java files are traversed again once the concepts are known.
+    private void rebuild(IProgressMonitor monitor, EntityDataBase entityDataBase,
+        Collection<IFile> changedJavaFiles) throws CoreException
+    {
         IProject project = getProject();
         deleteArcumMarkers(project);
 
         try {
-            ArcumDeclarationTable symbTab = reparseArcumCode(project, monitor);
+            ArcumDeclarationTable symbTab;
+            symbTab = reparseArcumCode(project, monitor, entityDataBase,
+                changedJavaFiles);
             List<OptionMatchTable> matchedEntities = symbTab.makeEntityTables();
             // XXX (!!!): I believe this is redundant, but maybe there was a reason for it
 //            for (OptionMatchTable entityTable: matchedEntities) {
@@ -116,7 +141,7 @@ public class ArcumBuilder extends IncrementalProjectBuilder
         }
     }
     
-    private static void deleteArcumMarkers(IProject project) {
+    static void deleteArcumMarkers(IProject project) {
         try {
             project.deleteMarkers(ArcumPlugin.MARKER_ID, false, IResource.DEPTH_INFINITE);
         }
@@ -132,11 +157,15 @@ public class ArcumBuilder extends IncrementalProjectBuilder
         System.out.printf("Starting incrementalBuild%n");
         
         // we still do a "fullBuild" of the .arcum files, but the delta visitor
-        // makes sure the needed Java files get new ASTs MACNEIL: in the future
-        // when only one AST at a time is stored in memory the two types of
-        // builds will be more similar
-        delta.accept(new ArcumBuildDeltaVisitor());
-        fullBuild(monitor);
+        // makes sure the needed Java files get new ASTs, and only the entities
+        // of those files are replaced in the existing entity database (once the
+        // new concepts are known to need nothing more than it has)
+        ArcumBuildDeltaVisitor deltaVisitor = new ArcumBuildDeltaVisitor();
+        delta.accept(deltaVisitor);
+
+        IProject project = getProject();
+        EntityDataBase entityDataBase = ArcumDeclarationTable.lookupEntityDataBase(project);
+        rebuild(monitor, entityDataBase, deltaVisitor.getChangedJavaFiles());
     }
 
     protected void startupOnInitialize() {
@@ -0,0 +1,185 @@
+package edu.ucsd.arcum.builders;
+
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.core.resources.*;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
+import org.eclipse.equinox.app.IApplication;
+import org.eclipse.equinox.app.IApplicationContext;
+import org.eclipse.jdt.core.JavaCore;
+
+import com.google.common.collect.Lists;
+
+import edu.ucsd.arcum.ArcumPlugin;
+import edu.ucsd.arcum.EclipseUtil;
+import edu.ucsd.arcum.exceptions.ArcumError;
+import edu.ucsd.arcum.exceptions.UserCompilationProblem;
+import edu.ucsd.arcum.interpreter.query.ArcumDeclarationTable;
+import edu.ucsd.arcum.interpreter.query.EntityDataBase;
+import edu.ucsd.arcum.interpreter.query.OptionMatchTable;
+
+// Runs the Arcum checks without a workbench, so they can be part of a batch
+// or CI build. The arguments name the workspace projects to check; with no
+// arguments every open project with the Arcum nature is checked. E.g.:
+//
+//   eclipse -nosplash -application edu.ucsd.arcum.headlessAnalysis
+//       -data <workspace> ProjectA ProjectB
+//
+// For each project the Java code is built, the .arcum files are parsed, and
+// every concept map is matched and its extra definition conditions checked,
+// just as the Arcum builder does. Errors are printed instead of shown in
+// dialogs, and the exit code is nonzero if any project has Arcum errors.
+public class HeadlessAnalysis implements IApplication
+{
+    public static final Integer EXIT_VIOLATIONS = 1;
+
+    public Object start(IApplicationContext context) throws Exception {
+        Map<?, ?> arguments = context.getArguments();
+        String[] args = (String[])arguments.get(IApplicationContext.APPLICATION_ARGS);
+        IWorkspace workspace = ResourcesPlugin.getWorkspace();
+        // the workspace keeps its description, so it's put back as it was
+        IWorkspaceDescription originalDescription = workspace.getDescription();
+        disableAutoBuilding(workspace);
+        try {
+            List<IProject> projects = getProjects(workspace, args);
+            if (projects.isEmpty()) {
+                System.err.printf("No Arcum projects to check%n");
+                return EXIT_VIOLATIONS;
+            }
+
+            int totalErrors = 0;
+            for (IProject project : projects) {
+                totalErrors += check(project);
+            }
+            System.out.printf("%d Arcum error(s) in %d project(s)%n", totalErrors,
+                projects.size());
+            return (totalErrors == 0) ? IApplication.EXIT_OK : EXIT_VIOLATIONS;
+        }
+        finally {
+            workspace.setDescription(originalDescription);
+        }
+    }
+
+    public void stop() {
+        // nothing to do: start always runs to completion
+    }
+
+    // Returns the number of errors found in the project
+    private static int check(IProject project) throws CoreException {
+        IProgressMonitor monitor = new ConsoleProgressMonitor();
+        System.out.printf("Checking %s%n", project.getName());
+        project.refreshLocal(IResource.DEPTH_INFINITE, monitor);
+        project.build(IncrementalProjectBuilder.FULL_BUILD, JavaCore.BUILDER_ID, null,
+            monitor);
+        ArcumBuilder.deleteArcumMarkers(project);
+
+        int numUnits = 0;
+        int numTables = 0;
+        boolean stopped = false;
+        ArcumDeclarationTable symbTab = null;
+        long start = System.nanoTime();
+        try {
+            symbTab = ArcumBuilder.reparseArcumCode(project, monitor);
+            List<OptionMatchTable> tables = symbTab.makeEntityTables(monitor);
+            numTables = tables.size();
+        }
+        catch (UserCompilationProblem ucp) {
+            stopped = true;
+            ArcumError.userError(ucp.getPosition(), "%s", ucp.getMessage());
+        }
+        catch (ArcumError e) {
+            // the problems have been reported already, as markers or on stderr
+            stopped = true;
+        }
+        long elapsedMillis = (System.nanoTime() - start) / 1000000;
+        if (symbTab != null && symbTab.getEntityDataBase() != null) {
+            // even if the matching stopped early, these units were traversed
+            EntityDataBase entityDataBase = symbTab.getEntityDataBase();
+            numUnits = entityDataBase.getNumberOfTraversedUnits();
+        }
+
+        int numErrors = reportMarkers(project);
+        if (stopped && numErrors == 0) {
+            // an error without a location: there is no marker to count
+            numErrors = 1;
+        }
+        double seconds = Math.max(elapsedMillis, 1) / 1000.0;
+        System.out.printf("%s: %d compilation units, %d concept map(s) in %d ms"
+            + " (%.1f units/s), %d error(s)%n", project.getName(), numUnits,
+            numTables, elapsedMillis, numUnits / seconds, numErrors);
+        return numErrors;
+    }
+
+    private static int reportMarkers(IProject project) throws CoreException {
+        IMarker[] markers = project.findMarkers(ArcumPlugin.MARKER_ID, true,
+            IResource.DEPTH_INFINITE);
+        int numErrors = 0;
+        for (IMarker marker : markers) {
+            int severity = marker.getAttribute(IMarker.SEVERITY, IMarker.SEVERITY_ERROR);
+            if (severity == IMarker.SEVERITY_ERROR) {
+                ++numErrors;
+            }
+            System.err.printf("%s:%d: %s%n", marker.getResource().getFullPath(), marker
+                .getAttribute(IMarker.LINE_NUMBER, 0), marker.getAttribute(
+                IMarker.MESSAGE, ""));
+        }
+        return numErrors;
+    }
+
+    private static List<IProject> getProjects(IWorkspace workspace, String[] args)
+        throws CoreException
+    {
+        List<IProject> result = Lists.newArrayList();
+        if (args != null && args.length > 0) {
+            for (String name : args) {
+                IProject project = workspace.getRoot().getProject(name);
+                if (!project.exists()) {
+                    System.err.printf("No project named %s in the workspace%n", name);
+                    continue;
+                }
+                if (!project.isOpen()) {
+                    project.open(null);
+                }
+                result.add(project);
+            }
+        }
+        else {
+            for (IProject project : EclipseUtil.getOpenProjects()) {
+                if (project.hasNature(ArcumPlugin.NATURE_ID)) {
+                    result.add(project);
+                }
+            }
+        }
+        return result;
+    }
+
+    // Otherwise the Arcum builder may run at the same time as the analysis
+    private static void disableAutoBuilding(IWorkspace workspace) throws CoreException {
+        IWorkspaceDescription description = workspace.getDescription();
+        if (description.isAutoBuilding()) {
+            description.setAutoBuilding(false);
+            workspace.setDescription(description);
+        }
+    }
+
+    // Prints the name of each task and subtask, and nothing else
+    private static class ConsoleProgressMonitor extends NullProgressMonitor
+    {
+        public @Override
+        void beginTask(String name, int totalWork) {
+            if (name != null && name.length() > 0) {
+                System.out.printf("  %s%n", name);
+            }
+        }
+
+        public @Override
+        void subTask(String name) {
+            if (ArcumPlugin.DEBUG && name != null && name.length() > 0) {
+                System.out.printf("    %s%n", name);
+            }
+        }
+    }
+}
@@ -6,6 +6,7 @@ import org.eclipse.core.resources.IProject;
 import org.eclipse.core.resources.IncrementalProjectBuilder;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.jface.dialogs.ProgressMonitorDialog;
 import org.eclipse.jface.operation.IRunnableWithProgress;
 
@@ -49,6 +50,10 @@ public class ParseArcumCodeOperation implements IRunnableWithProgress
             ParseArcumCodeOperation runnable;
 
             runnable = new ParseArcumCodeOperation(project, false);
+            if (EclipseUtil.isHeadless()) {
+                runnable.run(new NullProgressMonitor());
+                return runnable.numErrs == 0;
+            }
             dialog = new ProgressMonitorDialog(EclipseUtil.getShell());
             dialog.run(true, false, runnable);
             return runnable.numErrs == 0;
@@ -68,6 +73,10 @@ public class ParseArcumCodeOperation implements IRunnableWithProgress
             ParseArcumCodeOperation runnable;
 
             runnable = new ParseArcumCodeOperation(project, true);
+            if (EclipseUtil.isHeadless()) {
+                runnable.run(new NullProgressMonitor());
+                return runnable.numErrs == 0;
+            }
             dialog = new ProgressMonitorDialog(EclipseUtil.getShell());
             dialog.run(true, false, runnable);
             return runnable.numErrs == 0;
@@ -141,8 +141,11 @@ public class ASTUtil
     private static final Map<ASTNode, ITypeBinding> parentTable;
 
     static {
-        sugarTable = Maps.newIdentityHashMap();
-        parentTable = Maps.newIdentityHashMap();
+        // the EntityDataBase can be populated by several threads at once
+        sugarTable = Collections.synchronizedMap(Maps
+            .<ASTNode, ASTNode> newIdentityHashMap());
+        parentTable = Collections.synchronizedMap(Maps
+            .<ASTNode, ITypeBinding> newIdentityHashMap());
     }
 
     public static <T extends ASTNode> void recordUpdatedNode(T original, T replacement) {
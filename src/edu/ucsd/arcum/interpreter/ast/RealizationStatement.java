@@ -23,7 +23,12 @@ import com.google.common.collect.Sets;
 import edu.ucsd.arcum.exceptions.ArcumError;
 import edu.ucsd.arcum.exceptions.SourceLocation;
 import edu.ucsd.arcum.interpreter.ast.expressions.BooleanConjunction;
+import edu.ucsd.arcum.interpreter.ast.expressions.BooleanDisjunction;
 import edu.ucsd.arcum.interpreter.ast.expressions.ConstraintExpression;
+import edu.ucsd.arcum.interpreter.ast.expressions.FunctionalExpression;
+import edu.ucsd.arcum.interpreter.ast.expressions.IFunction;
+import edu.ucsd.arcum.interpreter.ast.expressions.ISubExpressionVisitor;
+import edu.ucsd.arcum.interpreter.ast.expressions.SelectExpression;
 import edu.ucsd.arcum.interpreter.query.*;
 import edu.ucsd.arcum.interpreter.satisfier.NodesWithLocations;
 import edu.ucsd.arcum.interpreter.satisfier.Satisfier;
@@ -592,8 +597,9 @@ public class RealizationStatement implements Constrainable
         return null;
     }
 
-    private static void realizeFixedPoint(EntityDataBase edb, OptionMatchTable table,
-        Collection<RealizationStatement> statements) throws CoreException
+    private static void realizeFixedPoint(final EntityDataBase edb,
+        final OptionMatchTable table, Collection<RealizationStatement> statements)
+        throws CoreException
     {
         if (true || DEBUG) {
             System.out.printf("%nFixed-pointing:%n%s%n", StringUtil.separate(statements,
@@ -619,16 +625,71 @@ public class RealizationStatement implements Constrainable
             }
         }
 
-        boolean updated = true;
-        while (updated) {
-            updated = false;
-            for (RealizationStatement stmt : statements) {
-                boolean addedNew = stmt.realizeTrait(edb, table);
-                if (addedNew) {
-                    updated = true;
+        new SemiNaiveFixedPoint<RealizationStatement>() {
+            protected TraitValue newDelta(RealizationStatement stmt) {
+                TraitSignature traitSignature = stmt.tuplesRealized.get(0);
+                return new TraitValue(traitSignature.getName(), traitSignature, stmt
+                    .isStatic(), stmt.isNested());
+            }
+
+            protected int countLookups(RealizationStatement stmt, Set<String> traitNames)
+            {
+                return RealizationStatement.countLookups(stmt.expression, traitNames);
+            }
+
+            protected boolean isMonotonicIn(RealizationStatement stmt,
+                Set<String> traitNames)
+            {
+                Set<String> nonMonotonic = stmt.expression.findNonMonotonicDependencies();
+                return Collections.disjoint(nonMonotonic, traitNames);
+            }
+
+            protected void evaluate(RealizationStatement stmt,
+                Map<String, TraitValue> deltas, Map<String, TraitValue> added)
+                throws CoreException
+            {
+                table.setTraitDeltas(deltas);
+                try {
+                    stmt.realizeTrait(edb, table, added);
+                }
+                finally {
+                    table.setTraitDeltas(null);
                 }
             }
+        }.run(statements);
+    }
+
+    // The most times the given traits are looked up in any one conjunction of
+    // the expression: the alternatives of a disjunction count separately. A
+    // select that looks them up counts as more than one, since its conditions
+    // decide which of its values is taken.
+    private static int countLookups(ConstraintExpression expr,
+        final Set<String> traitNames)
+    {
+        if (expr instanceof BooleanDisjunction) {
+            int result = 0;
+            for (ConstraintExpression clause : ((BooleanDisjunction)expr).getClauses()) {
+                result = Math.max(result, countLookups(clause, traitNames));
+            }
+            return result;
+        }
+        else if (expr instanceof SelectExpression) {
+            Set<String> dependencies = expr.findAllTraitDependencies();
+            return Collections.disjoint(dependencies, traitNames) ? 0 : 2;
         }
+        final int[] result = new int[1];
+        if (expr instanceof FunctionalExpression) {
+            IFunction function = ((FunctionalExpression)expr).getFunction();
+            if (traitNames.contains(function.getName())) {
+                result[0] = 1;
+            }
+        }
+        expr.visitSubExpressions(new ISubExpressionVisitor() {
+            public void visit(ConstraintExpression subExpr) {
+                result[0] += countLookups(subExpr, traitNames);
+            }
+        });
+        return result[0];
     }
 
     private static void addTraits(Collection<RealizationStatement> statements,
@@ -744,10 +805,11 @@ public class RealizationStatement implements Constrainable
         return result;
     }
 
-    // Assumes that typeCheckAndValidate has already been called. Returns true if
-    // any new instances are added to the table.
-    private boolean realizeTrait(EntityDataBase entityDataBase,
-        OptionMatchTable optionMatchTable) throws CoreException
+    // Assumes that typeCheckAndValidate has already been called. The instances
+    // that are new to the table are also added to their trait in the given map.
+    private void realizeTrait(EntityDataBase entityDataBase,
+        OptionMatchTable optionMatchTable, Map<String, TraitValue> added)
+        throws CoreException
     {
         TraitSignature traitSignature = tuplesRealized.get(0);
         String name = traitSignature.getName();
@@ -756,17 +818,15 @@ public class RealizationStatement implements Constrainable
         Collection<List<EntityTuple>> matches;
         matches = satisfier.getMatches(tuplesRealized, entityDataBase, optionMatchTable);
 
-        boolean anyNew = false;
         for (List<EntityTuple> match : matches) {
             if (match.size() != 1) {
                 ArcumError.fatalError("Internal error: should only have one trait type");
             }
             boolean addedNew = optionMatchTable.addTraitInstance(name, match.get(0));
             if (addedNew) {
-                anyNew = true;
+                added.get(name).addTuple(match.get(0));
             }
         }
-        return anyNew;
     }
 
     public boolean isStatic() {
@@ -0,0 +1,78 @@
+package edu.ucsd.arcum.interpreter.ast;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+
+import com.google.common.collect.Maps;
+
+import edu.ucsd.arcum.interpreter.query.TraitValue;
+
+// Evaluates statements that realize mutually recursive traits until none of
+// them finds a new tuple. The first round evaluates each statement in full.
+// After that, each statement that looks up the traits being realized at most
+// once in any conjunction (and only monotonically) is evaluated with those
+// traits standing for just the tuples added in the previous round, because any
+// tuple that is new to it must come from one of those. Other statements are
+// evaluated in full each round, and a statement that doesn't look them up at
+// all can't find anything new after the first round.
+abstract class SemiNaiveFixedPoint<S>
+{
+    // An empty value of the trait the statement realizes
+    protected abstract TraitValue newDelta(S statement);
+
+    // The most times the statement looks up any of the traits in one conjunction
+    protected abstract int countLookups(S statement, Set<String> traitNames);
+
+    protected abstract boolean isMonotonicIn(S statement, Set<String> traitNames);
+
+    // Evaluates the statement, adding the tuples that are new to its trait to
+    // the trait's value in added. When deltas isn't null, the traits it names
+    // stand for just the tuples in it.
+    protected abstract void evaluate(S statement, Map<String, TraitValue> deltas,
+        Map<String, TraitValue> added) throws CoreException;
+
+    public void run(Collection<S> statements) throws CoreException {
+        Map<String, TraitValue> added = newDeltas(statements);
+        for (S statement : statements) {
+            evaluate(statement, null, added);
+        }
+        Set<String> traitNames = added.keySet();
+        while (anyAdded(added)) {
+            Map<String, TraitValue> deltas = added;
+            added = newDeltas(statements);
+            for (S statement : statements) {
+                int lookups = countLookups(statement, traitNames);
+                if (lookups == 0) {
+                    continue;
+                }
+                if (lookups == 1 && isMonotonicIn(statement, traitNames)) {
+                    evaluate(statement, deltas, added);
+                }
+                else {
+                    evaluate(statement, null, added);
+                }
+            }
+        }
+    }
+
+    private Map<String, TraitValue> newDeltas(Collection<S> statements) {
+        Map<String, TraitValue> result = Maps.newHashMap();
+        for (S statement : statements) {
+            TraitValue delta = newDelta(statement);
+            result.put(delta.getTraitName(), delta);
+        }
+        return result;
+    }
+
+    private static boolean anyAdded(Map<String, TraitValue> added) {
+        for (TraitValue traitValue : added.values()) {
+            if (traitValue.size() != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -8,6 +8,7 @@ import com.google.common.collect.Sets;
 import edu.ucsd.arcum.exceptions.SourceLocation;
 import edu.ucsd.arcum.interpreter.ast.TraitSignature;
 import edu.ucsd.arcum.interpreter.query.EntityDataBase;
+import edu.ucsd.arcum.interpreter.query.EntityRequirements;
 import edu.ucsd.arcum.interpreter.query.IEntityLookup;
 import edu.ucsd.arcum.interpreter.query.OptionMatchTable;
 import edu.ucsd.arcum.interpreter.satisfier.Satisfier;
@@ -28,12 +29,13 @@ public abstract class ConstraintExpression
         Set<String> varsInScope)
     {
         doCheckUserDefinedPredicates(tupleSets, varsInScope);
+        EntityRequirements.noteTypeChecked(this, tupleSets);
     }
 
     protected abstract void doCheckUserDefinedPredicates(List<TraitSignature> tupleSets,
         Set<String> varsInScope);
 
-    // TODO: Complete this implementation
+    // Calls the visitor on each immediate subexpression; leaf expressions have none
     public void visitSubExpressions(ISubExpressionVisitor visitor) {}
 
     public abstract Set<String> findAllTraitDependencies();
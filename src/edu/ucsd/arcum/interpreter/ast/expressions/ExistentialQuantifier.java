@@ -37,6 +37,11 @@ public class ExistentialQuantifier extends ConstraintExpression
         body.doCheckUserDefinedPredicates(tupleSets, nextScope);
     }
 
+    @Override
+    public void visitSubExpressions(ISubExpressionVisitor visitor) {
+        visitor.visit(body);
+    }
+
     @Override
     public Set<String> getArcumVariableReferences() {
         Set<String> result = Sets.newHashSet(body.getArcumVariableReferences());
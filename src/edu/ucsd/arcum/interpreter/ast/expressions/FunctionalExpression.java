@@ -110,6 +110,25 @@ public class FunctionalExpression extends ConstraintExpression
         }
     }
 
+    @Override public void visitSubExpressions(ISubExpressionVisitor visitor) {
+        for (ConstraintExpression arg : args) {
+            visitor.visit(arg);
+        }
+    }
+
+    public IFunction getFunction() {
+        return function;
+    }
+
+    public List<ConstraintExpression> getArgs() {
+        return args;
+    }
+
+    // valid after type checking
+    public List<EntityType> getParameterTypes() {
+        return parameterTypes;
+    }
+
     @Override public Set<String> findAllTraitDependencies() {
         Set<String> result = flattenFindAllTraitDependencies(args);
         result.add(function.getName());
@@ -119,6 +119,12 @@ public class PatternExpression extends ConstraintExpression
         }
     }
 
+    @Override public void visitSubExpressions(ISubExpressionVisitor visitor) {
+        for (EmbeddedExpression embeddedExpression : embeddedExpressions) {
+            visitor.visit(embeddedExpression.getConstraintExpression());
+        }
+    }
+
     public boolean isImmediatePattern() {
         return isImmediate;
     }
@@ -37,6 +37,15 @@ public class SelectExpression extends ConstraintExpression
         }
     }
 
+    @Override public void visitSubExpressions(ISubExpressionVisitor visitor) {
+        for (ConstraintExpression condition : conditions) {
+            visitor.visit(condition);
+        }
+        for (ConstraintExpression value : values) {
+            visitor.visit(value);
+        }
+    }
+
     @Override public Set<String> getArcumVariableReferences() {
         Set<String> result = Sets.newHashSet();
         for (ConstraintExpression condition : conditions) {
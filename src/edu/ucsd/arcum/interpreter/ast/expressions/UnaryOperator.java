@@ -24,4 +24,8 @@ public abstract class UnaryOperator extends ConstraintExpression
     {
         operand.doCheckUserDefinedPredicates(tupleSets, varsInScope);
     }
+
+    @Override public void visitSubExpressions(ISubExpressionVisitor visitor) {
+        visitor.visit(operand);
+    }
 }
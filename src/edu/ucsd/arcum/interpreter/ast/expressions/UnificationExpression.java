@@ -27,6 +27,10 @@ public class UnificationExpression extends ConstraintExpression
         expression.doCheckUserDefinedPredicates(tupleSets, varsInScope);
     }
 
+    @Override public void visitSubExpressions(ISubExpressionVisitor visitor) {
+        visitor.visit(expression);
+    }
+
     @Override public Set<String> getArcumVariableReferences() {
         Set<String> result = Sets.newHashSet(name);
         result.addAll(expression.getArcumVariableReferences());
@@ -39,6 +39,11 @@ public class UniversalQuantifier extends ConstraintExpression
         body.doCheckUserDefinedPredicates(tupleSets, nextScope);
     }
 
+    @Override public void visitSubExpressions(ISubExpressionVisitor visitor) {
+        visitor.visit(initialSet);
+        visitor.visit(body);
+    }
+
     @Override public Set<String> getArcumVariableReferences() {
         Set<String> result = Sets.newHashSet();
         result.addAll(initialSet.getArcumVariableReferences());
@@ -51,6 +51,12 @@ public abstract class VariadicOperator extends ConstraintExpression implements
         }
     }
 
+    @Override public void visitSubExpressions(ISubExpressionVisitor visitor) {
+        for (ConstraintExpression clause : clauses) {
+            visitor.visit(clause);
+        }
+    }
+
     @Override public String toString() {
         StringBuilder buff = new StringBuilder();
         buff.append("((");
@@ -51,6 +51,10 @@ public class FieldAssignmentPattern extends ProgramFragment
         return theta;
     }
 
+    @Override public Class<?> getRootNodeClass() {
+        return Assignment.class;
+    }
+
     @Override protected BindingMap matchesASTNode(ASTNode node) {
         if (node == null) {
             ArcumError.fatalError("Gulp, this is bad");
@@ -0,0 +1,185 @@
+package edu.ucsd.arcum.interpreter.fragments;
+
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ChildPropertyDescriptor;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.StructuralPropertyDescriptor;
+
+import com.google.common.collect.Lists;
+
+// A PartialNode tree compiled into the checks a node must pass before it is
+// worth matching the tree against it: the class of each node, the values of
+// the simple properties and the identifiers the tree pins, and the sizes of
+// the lists whose order matters. The checks are done in that order, node
+// class and simple properties first, then the children; nothing is allocated
+// on the way, and since almost all match attempts fail, most never get as far
+// as the PartialNode's own matching (which builds EntityLists and BindingMaps).
+//
+// Passing the checks is necessary, not sufficient, for a match: fragments that
+// bind variables or compare resolved entities are left to the full match. A
+// compiled matcher is immutable, so it can be shared by parallel searches.
+final class FragmentMatcher
+{
+    private static final FragmentMatcher[] NO_MATCHERS = new FragmentMatcher[0];
+    private static final StructuralPropertyDescriptor[] NO_SPDS =
+        new StructuralPropertyDescriptor[0];
+
+    private final Class<?> rootType;
+
+    // simple properties with the value they must have (which may be null)
+    private final StructuralPropertyDescriptor[] simpleSpds;
+    private final Object[] simpleValues;
+
+    // child properties that hold a SimpleName with the given identifier
+    private final StructuralPropertyDescriptor[] nameSpds;
+    private final String[] identifiers;
+
+    // child properties that must hold a node that passes the child's checks
+    private final StructuralPropertyDescriptor[] childSpds;
+    private final FragmentMatcher[] children;
+
+    // child list properties whose elements must match in order: each list must
+    // have the given size, and each element with a matcher must pass it
+    private final StructuralPropertyDescriptor[] listSpds;
+    private final int[] listSizes;
+    private final FragmentMatcher[][] listElements;
+
+    public static FragmentMatcher compile(PartialNode partialNode) {
+        return new FragmentMatcher(partialNode);
+    }
+
+    private FragmentMatcher(PartialNode partialNode) {
+        List<StructuralPropertyDescriptor> simple = Lists.newArrayList();
+        List<Object> values = Lists.newArrayList();
+        List<StructuralPropertyDescriptor> named = Lists.newArrayList();
+        List<String> names = Lists.newArrayList();
+        List<StructuralPropertyDescriptor> child = Lists.newArrayList();
+        List<FragmentMatcher> childMatchers = Lists.newArrayList();
+        List<StructuralPropertyDescriptor> lists = Lists.newArrayList();
+        List<FragmentMatcher[]> elementMatchers = Lists.newArrayList();
+
+        for (StructuralPropertyDescriptor spd : partialNode.getEdges()) {
+            ProgramFragment branch = partialNode.lookupEdge(spd);
+            if (spd.isSimpleProperty()) {
+                if (branch instanceof SimplePropertyLeaf) {
+                    simple.add(spd);
+                    values.add(((SimplePropertyLeaf)branch).getValue());
+                }
+            }
+            else if (spd.isChildProperty()) {
+                if (branch instanceof PartialNode) {
+                    child.add(spd);
+                    childMatchers.add(((PartialNode)branch).getMatcher());
+                }
+                else if (holdsSimpleName(spd)) {
+                    String identifier = pinnedIdentifier(branch);
+                    if (identifier != null) {
+                        named.add(spd);
+                        names.add(identifier);
+                    }
+                }
+            }
+            else if (branch instanceof SubtreeList) {
+                SubtreeList subtreeList = (SubtreeList)branch;
+                if (subtreeList.getKind() == SubtreeList.Kind.ORDER_MATTERS) {
+                    lists.add(spd);
+                    elementMatchers.add(compileElements(subtreeList));
+                }
+            }
+        }
+
+        this.rootType = partialNode.getRootType();
+        this.simpleSpds = simple.toArray(NO_SPDS);
+        this.simpleValues = values.toArray();
+        this.nameSpds = named.toArray(NO_SPDS);
+        this.identifiers = names.toArray(new String[names.size()]);
+        this.childSpds = child.toArray(NO_SPDS);
+        this.children = childMatchers.toArray(NO_MATCHERS);
+        this.listSpds = lists.toArray(NO_SPDS);
+        this.listSizes = new int[elementMatchers.size()];
+        this.listElements = new FragmentMatcher[elementMatchers.size()][];
+        for (int i = 0; i < listSizes.length; ++i) {
+            listElements[i] = elementMatchers.get(i);
+            listSizes[i] = listElements[i].length;
+        }
+    }
+
+    // The elements that aren't PartialNodes have no matcher (a null entry)
+    private static FragmentMatcher[] compileElements(SubtreeList subtreeList) {
+        FragmentMatcher[] result = new FragmentMatcher[subtreeList.size()];
+        for (int i = 0; i < result.length; ++i) {
+            ProgramFragment element = subtreeList.get(i);
+            if (element instanceof PartialNode) {
+                result[i] = ((PartialNode)element).getMatcher();
+            }
+        }
+        return result;
+    }
+
+    private static boolean holdsSimpleName(StructuralPropertyDescriptor spd) {
+        return ((ChildPropertyDescriptor)spd).getChildType() == SimpleName.class;
+    }
+
+    // The identifier a resolved name must have, when the fragment is one
+    private static String pinnedIdentifier(ProgramFragment branch) {
+        if (branch instanceof ResolvedEntity) {
+            Object value = ((ResolvedEntity)branch).getValue();
+            if (value instanceof SimpleName) {
+                return ((SimpleName)value).getIdentifier();
+            }
+            else if (value instanceof String) {
+                return (String)value;
+            }
+        }
+        return null;
+    }
+
+    // False only if the PartialNode this was compiled from can't match the node
+    public boolean mightMatch(ASTNode node) {
+        if (!rootType.isInstance(node)) {
+            return false;
+        }
+        for (int i = 0; i < simpleSpds.length; ++i) {
+            Object value = node.getStructuralProperty(simpleSpds[i]);
+            Object expected = simpleValues[i];
+            if (value == null) {
+                if (expected != null) {
+                    return false;
+                }
+            }
+            else if (value != expected && !value.equals(expected)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < nameSpds.length; ++i) {
+            SimpleName name = (SimpleName)node.getStructuralProperty(nameSpds[i]);
+            if (name == null || !name.getIdentifier().equals(identifiers[i])) {
+                return false;
+            }
+        }
+        for (int i = 0; i < childSpds.length; ++i) {
+            ASTNode child = (ASTNode)node.getStructuralProperty(childSpds[i]);
+            if (child == null || !children[i].mightMatch(child)) {
+                return false;
+            }
+        }
+        for (int i = 0; i < listSpds.length; ++i) {
+            List elements = (List)node.getStructuralProperty(listSpds[i]);
+            if (elements.size() != listSizes[i]) {
+                return false;
+            }
+            FragmentMatcher[] elementMatchers = listElements[i];
+            for (int j = 0; j < elementMatchers.length; ++j) {
+                FragmentMatcher elementMatcher = elementMatchers[j];
+                if (elementMatcher != null
+                    && !elementMatcher.mightMatch((ASTNode)elements.get(j)))
+                {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+}
@@ -21,6 +21,9 @@ public class PartialNode extends ProgramFragment
     private Map<StructuralPropertyDescriptor, ProgramFragment> children;
     private ArrayList<StructuralPropertyDescriptor> iterationOrder;
 
+    // Compiled on the first match, once the tree is complete
+    private FragmentMatcher matcher;
+
     public PartialNode(Class rootType) {
         this.rootType = rootType;
         this.children = new IdentityHashMap<StructuralPropertyDescriptor, ProgramFragment>(
@@ -33,6 +36,7 @@ public class PartialNode extends ProgramFragment
     {
         children.put(edge, branch);
         iterationOrder.add(edge);
+        matcher = null;
     }
 
     // Removing a branch means that its value won't be taken into consideration
@@ -40,6 +44,7 @@ public class PartialNode extends ProgramFragment
     public void removeBranch(StructuralPropertyDescriptor spd) {
         children.remove(spd);
         iterationOrder.remove(spd);
+        matcher = null;
     }
 
     @Override protected void buildString(StringBuilder buff) {
@@ -113,8 +118,22 @@ public class PartialNode extends ProgramFragment
         return rootType;
     }
 
+    @Override public Class<?> getRootNodeClass() {
+        return rootType;
+    }
+
+    // Several threads may compile the same tree at once; they get equal matchers
+    FragmentMatcher getMatcher() {
+        FragmentMatcher result = matcher;
+        if (result == null) {
+            result = FragmentMatcher.compile(this);
+            matcher = result;
+        }
+        return result;
+    }
+
     @Override protected BindingMap matchesASTNode(ASTNode node) {
-        if (rootType.isInstance(node)) {
+        if (getMatcher().mightMatch(node)) {
             Set<Entry<StructuralPropertyDescriptor, ProgramFragment>> entrySet;
             Iterator<Entry<StructuralPropertyDescriptor, ProgramFragment>> it;
             Entry<StructuralPropertyDescriptor, ProgramFragment> entry;
@@ -171,4 +190,8 @@ public class PartialNode extends ProgramFragment
     public ProgramFragment lookupEdge(StructuralPropertyDescriptor edge) {
         return children.get(edge);
     }
+
+    public List<StructuralPropertyDescriptor> getEdges() {
+        return Collections.unmodifiableList(iterationOrder);
+    }
 }
\ No newline at end of file
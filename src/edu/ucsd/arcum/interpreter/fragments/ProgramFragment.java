@@ -49,6 +49,13 @@ public abstract class ProgramFragment
         return null;
     }
 
+    // Every AST node this fragment matches is an instance of the returned
+    // class, which lets a search skip the nodes of other classes. Returns null
+    // when that isn't known.
+    public Class<?> getRootNodeClass() {
+        return null;
+    }
+
     protected BindingMap matchesTypeBinding(ITypeBinding typeBinding) {
         return null;
     }
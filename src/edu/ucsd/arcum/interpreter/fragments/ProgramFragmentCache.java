@@ -0,0 +1,200 @@
+package edu.ucsd.arcum.interpreter.fragments;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.jdt.core.dom.AbstractTypeDeclaration;
+import org.eclipse.jdt.core.dom.FieldDeclaration;
+import org.eclipse.jdt.core.dom.ITypeBinding;
+
+import edu.ucsd.arcum.interpreter.ast.expressions.PatternExpression;
+import edu.ucsd.arcum.interpreter.query.EntityType;
+import edu.ucsd.arcum.interpreter.query.IEntityLookup;
+import edu.ucsd.arcum.interpreter.satisfier.TypeLookupTable;
+
+// Remembers the program fragments a ProgramFragmentFactory built for a pattern,
+// so that a pattern evaluated again and again (e.g., in the body of a forAll or
+// in each round of a fixed point) is scanned and parsed just once. Building
+// the fragments depends on the pattern, the type it is expected to have, the
+// mode, the imports of the parser, and the values and types of the variables
+// the pattern references: all of these together are the key.
+//
+// Only patterns whose variables are unbound, or bound to types, declarations,
+// strings or modifiers, are kept. A pattern with a variable bound to an
+// arbitrary node or list (or with embedded expressions, whose values are
+// recomputed each time) is built anew each time, instead of keeping one entry
+// for every node the variable is bound to. Even so a project has many types and
+// names, so only the most recently used entries are kept. The fragments are only
+// read once they are built, so one list of them can be shared by several
+// evaluations.
+public class ProgramFragmentCache
+{
+    // The number of entries kept, overridden with the system property
+    // edu.ucsd.arcum.fragmentCacheSize
+    private static final int DEFAULT_MAXIMUM_SIZE = Integer.getInteger(
+        "edu.ucsd.arcum.fragmentCacheSize", 1024);
+
+    // access ordered, so iteration starts with the least recently used entry
+    private final Map<PatternKey, List<ProgramFragment>> cache;
+
+    public ProgramFragmentCache() {
+        this(DEFAULT_MAXIMUM_SIZE);
+    }
+
+    public ProgramFragmentCache(final int maximumSize) {
+        this.cache = new LinkedHashMap<PatternKey, List<ProgramFragment>>(16, 0.75f,
+            true) {
+            @Override protected boolean removeEldestEntry(
+                Map.Entry<PatternKey, List<ProgramFragment>> eldest)
+            {
+                return size() > maximumSize;
+            }
+        };
+    }
+
+    public List<ProgramFragment> getFragments(PatternExpression pattern,
+        EntityType type, IEntityLookup lookup, TypeLookupTable types,
+        boolean isMatchingMode)
+    {
+        PatternKey key = newKey(pattern, type, lookup, types, isMatchingMode);
+        if (key == null) {
+            return buildFragments(pattern, type, lookup, types, isMatchingMode);
+        }
+        List<ProgramFragment> result;
+        synchronized (cache) {
+            result = cache.get(key);
+        }
+        if (result == null) {
+            // built outside of the lock: two threads may build the same fragments
+            result = buildFragments(pattern, type, lookup, types, isMatchingMode);
+            synchronized (cache) {
+                cache.put(key, result);
+            }
+        }
+        return result;
+    }
+
+    public void clear() {
+        synchronized (cache) {
+            cache.clear();
+        }
+    }
+
+    private static List<ProgramFragment> buildFragments(PatternExpression pattern,
+        EntityType type, IEntityLookup lookup, TypeLookupTable types,
+        boolean isMatchingMode)
+    {
+        ProgramFragmentFactory builder;
+        builder = new ProgramFragmentFactory(pattern, type, lookup, types,
+            isMatchingMode);
+        return builder.getAbstractProgramFragments();
+    }
+
+    // Returns null if the fragments of the pattern shouldn't be kept
+    private static PatternKey newKey(PatternExpression pattern, EntityType type,
+        IEntityLookup lookup, TypeLookupTable types, boolean isMatchingMode)
+    {
+        if (pattern.hasEmbeddedExpressions()) {
+            return null;
+        }
+        Set<String> references = pattern.getArcumVariableReferences();
+        Object[] values = new Object[references.size()];
+        EntityType[] valueTypes = new EntityType[references.size()];
+        int i = 0;
+        for (String reference : references) {
+            Object value = lookup.lookupEntity(reference);
+            if (!isShapeValue(value)) {
+                return null;
+            }
+            values[i] = value;
+            valueTypes[i] = types.lookupType(reference);
+            ++i;
+        }
+        String imports = lookup.getImports();
+        return new PatternKey(pattern, type, isMatchingMode, imports, values,
+            valueTypes);
+    }
+
+    private static boolean isShapeValue(Object value) {
+        return value == null || value instanceof ITypeBinding
+            || value instanceof AbstractTypeDeclaration
+            || value instanceof FieldDeclaration || value instanceof String
+            || value instanceof ModifierElement;
+    }
+
+    private static class PatternKey
+    {
+        private final PatternExpression pattern;
+        private final EntityType type;
+        private final boolean isMatchingMode;
+        private final String imports;
+        private final Object[] values;
+        private final EntityType[] valueTypes;
+        private final int hashCode;
+
+        public PatternKey(PatternExpression pattern, EntityType type,
+            boolean isMatchingMode, String imports, Object[] values,
+            EntityType[] valueTypes)
+        {
+            this.pattern = pattern;
+            this.type = type;
+            this.isMatchingMode = isMatchingMode;
+            this.imports = imports;
+            this.values = values;
+            this.valueTypes = valueTypes;
+
+            int hash = System.identityHashCode(pattern);
+            hash = 31 * hash + type.hashCode();
+            hash = 31 * hash + (isMatchingMode ? 1 : 0);
+            hash = 31 * hash + imports.hashCode();
+            for (Object value : values) {
+                hash = 31 * hash + valueHashCode(value);
+            }
+            this.hashCode = 31 * hash + Arrays.hashCode(valueTypes);
+        }
+
+        @Override public int hashCode() {
+            return hashCode;
+        }
+
+        // The pattern and the values (but strings) are compared by identity:
+        // the same text can appear in different patterns, and a reparsed type
+        // isn't the same type
+        @Override public boolean equals(Object obj) {
+            if (!(obj instanceof PatternKey)) {
+                return false;
+            }
+            PatternKey that = (PatternKey)obj;
+            if (this.pattern != that.pattern || this.type != that.type
+                || this.isMatchingMode != that.isMatchingMode
+                || !this.imports.equals(that.imports)
+                || !Arrays.equals(this.valueTypes, that.valueTypes))
+            {
+                return false;
+            }
+            for (int i = 0; i < values.length; ++i) {
+                if (!sameValue(this.values[i], that.values[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static int valueHashCode(Object value) {
+            if (value instanceof String) {
+                return value.hashCode();
+            }
+            return System.identityHashCode(value);
+        }
+
+        private static boolean sameValue(Object v1, Object v2) {
+            if (v1 instanceof String) {
+                return v1.equals(v2);
+            }
+            return v1 == v2;
+        }
+    }
+}
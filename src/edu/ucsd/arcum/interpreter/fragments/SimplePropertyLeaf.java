@@ -13,6 +13,10 @@ public class SimplePropertyLeaf extends ProgramFragment
         this.value = value;
     }
 
+    public Object getValue() {
+        return value;
+    }
+
     @Override protected void buildString(StringBuilder buff) {
         buff.append(getIndenter());
         buff.append(value.toString());
@@ -11,11 +11,9 @@ import org.eclipse.jdt.core.dom.Modifier;
 import com.google.common.collect.Lists;
 
 import edu.ucsd.arcum.exceptions.ArcumError;
-import edu.ucsd.arcum.exceptions.SourceLocation;
 import edu.ucsd.arcum.interpreter.query.EntityType;
 import edu.ucsd.arcum.interpreter.query.IEntityLookup;
 import edu.ucsd.arcum.interpreter.satisfier.BindingMap;
-import edu.ucsd.arcum.util.StringUtil;
 
 public class SubtreeList extends ProgramFragment
 {
@@ -183,25 +181,23 @@ public class SubtreeList extends ProgramFragment
             if (astNodes.size() != fragments.size()) {
                 return null;
             }
-            
-            BindingMap result = bindRoot(originalRoot);
+            return assignAll(bindRoot(originalRoot), fragments, astNodes);
+        }
+    }
 
-            fragmentSearch: for (ProgramFragment fragment : fragments) {
-                Iterator<Object> astIt = astNodes.iterator();
-                while (astIt.hasNext()) {
-                    Object astNode = astIt.next();
-                    BindingMap theta = fragment.matches(astNode);
-                    if (theta != null) {
-                        result.addBindings(theta);
-                        astIt.remove();
-                        continue fragmentSearch;
-                    }
-                }
-                // if we get to here the fragment has no match, the lists aren't the same
-                return null;
-            }
-            return result;
+    // Adds the bindings of matching each fragment to a different one of the
+    // nodes, or returns null if there's no such assignment
+    private static BindingMap assignAll(BindingMap result,
+        List<ProgramFragment> fragments, List astNodes)
+    {
+        BindingMap[] thetas = UnorderedAssignment.assign(fragments, astNodes);
+        if (thetas == null) {
+            return null;
+        }
+        for (BindingMap theta : thetas) {
+            result.addBindings(theta);
         }
+        return result;
     }
 
     private BindingMap compareModifiers(List<ProgramFragment> fragments,
@@ -224,59 +220,9 @@ public class SubtreeList extends ProgramFragment
             return null;
         }
         
-        ArrayList<ProgramFragment> fragmentsNoVariables;
-        fragmentsNoVariables = Lists.newArrayList(fragments);
-        
-        ArrayList<ProgramFragment> onlyVariables;
-        onlyVariables = Lists.newArrayList();
-        
-        {
-            Iterator<ProgramFragment> it = fragmentsNoVariables.iterator();
-            while (it.hasNext()) {
-                ProgramFragment fragment = it.next();
-                if (fragment instanceof VariableNode) {
-                    it.remove();
-                    onlyVariables.add(fragment);
-                }
-            }
-        }
-        
-        fragmentSearch: for (ProgramFragment fragment : fragmentsNoVariables) {
-            Iterator<Object> astIt = astNodes.iterator();
-            while (astIt.hasNext()) {
-                Object astNode = astIt.next();
-                theta = fragment.matches(astNode);
-                if (theta != null) {
-                    result.addBindings(theta);
-                    astIt.remove();
-                    continue fragmentSearch;
-                }
-            }
-            // if we get to here the fragment has no match, the lists aren't the same
-            return null;
-        }
-        
-        if (onlyVariables.size() > 1) {
-            ArcumError.fatalUserError(SourceLocation.GENERATED,
-                "Unsupported: Multiple variables matching non-access specifier: %s",
-                StringUtil.separate(onlyVariables));
-        }
-        
-        if (onlyVariables.size() != astNodes.size()) {
-            return null;
-        }
-        
-        if (onlyVariables.size() == 1) {
-            ProgramFragment fragment = onlyVariables.get(0);
-            theta = fragment.matches(astNodes.get(0));
-            if (theta != null) {
-                result.addBindings(theta);
-            }
-            else {
-                return null;
-            }
-        }
-        return result;
+        // Variables can match any modifier, so they are assigned along with
+        // the rest: each one gets a modifier that no other fragment needs
+        return assignAll(result, fragments, astNodes);
     }
 
     private boolean isListOfModifiers(List astNodes) {
@@ -342,4 +288,8 @@ public class SubtreeList extends ProgramFragment
     public int size() {
         return nodes.size();
     }
+
+    public Kind getKind() {
+        return kind;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,185 @@
+package edu.ucsd.arcum.interpreter.fragments;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import edu.ucsd.arcum.interpreter.satisfier.BindingMap;
+
+// Assigns each fragment of an unordered list to a different entity that it
+// matches, e.g. the fragments of [@Deprecated public static `_] to the
+// modifiers of a declaration. Trying the fragments in turn and taking the
+// first entity each one matches can fail when a fragment that would match
+// anything (like a variable) takes the one entity another fragment needed, so
+// the assignment is found as a bipartite matching instead.
+//
+// The entities are grouped by their class, and a PartialNode's candidates are
+// only the entities of its class. A fragment is only matched against a
+// candidate when the search for an assignment gets to that pair, and each
+// pair is matched at most once, so a fragment that gets a free candidate
+// early never has the rest of its candidates matched. The fragments with the
+// fewest candidates are assigned first, so the search for augmenting paths is
+// only needed for the ambiguous remainder.
+final class UnorderedAssignment
+{
+    private static final int UNASSIGNED = -1;
+
+    private final List<ProgramFragment> fragments;
+    private final List<?> entities;
+    // for each fragment, the indexes of the entities it might match; the
+    // bindings of matching each candidate (null if it doesn't match) are only
+    // filled in when the pair is first tried
+    private final int[][] candidates;
+    private final BindingMap[][] matches;
+    private final boolean[][] tried;
+    private final int[] fragmentOf;
+    private final int[] candidateOf;
+    private final boolean[] visited;
+
+    // Returns the bindings of each fragment's match, in the order of the
+    // fragments, or null if the fragments can't all be given a different entity
+    public static BindingMap[] assign(List<ProgramFragment> fragments, List<?> entities)
+    {
+        UnorderedAssignment assignment = new UnorderedAssignment(fragments, entities);
+        return assignment.solve(fragments.size());
+    }
+
+    private UnorderedAssignment(List<ProgramFragment> fragments, List<?> entities) {
+        this.fragments = fragments;
+        this.entities = entities;
+        this.candidates = new int[fragments.size()][];
+        this.matches = new BindingMap[fragments.size()][];
+        this.tried = new boolean[fragments.size()][];
+        this.fragmentOf = new int[entities.size()];
+        this.candidateOf = new int[fragments.size()];
+        this.visited = new boolean[entities.size()];
+        Arrays.fill(fragmentOf, UNASSIGNED);
+        Arrays.fill(candidateOf, UNASSIGNED);
+
+        Map<Class<?>, List<Integer>> byClass = groupByClass(entities);
+        for (int i = 0; i < candidates.length; ++i) {
+            findCandidates(i, fragments.get(i), byClass);
+        }
+    }
+
+    private static Map<Class<?>, List<Integer>> groupByClass(List<?> entities) {
+        Map<Class<?>, List<Integer>> result = Maps.newLinkedHashMap();
+        for (int j = 0; j < entities.size(); ++j) {
+            Class<?> entityClass = entities.get(j).getClass();
+            List<Integer> indexes = result.get(entityClass);
+            if (indexes == null) {
+                indexes = Lists.newArrayList();
+                result.put(entityClass, indexes);
+            }
+            indexes.add(j);
+        }
+        return result;
+    }
+
+    // The pre-match checks of a PartialNode aren't run here: its matches method
+    // runs them first anyway, when the pair is tried
+    private void findCandidates(int i, ProgramFragment fragment,
+        Map<Class<?>, List<Integer>> byClass)
+    {
+        Class<?> rootType = null;
+        if (fragment instanceof PartialNode) {
+            rootType = ((PartialNode)fragment).getRootType();
+        }
+
+        List<Integer> found = Lists.newArrayList();
+        for (Entry<Class<?>, List<Integer>> group : byClass.entrySet()) {
+            // entities that aren't nodes (e.g. signatures) are matched as is
+            boolean isNode = ASTNode.class.isAssignableFrom(group.getKey());
+            if (isNode && rootType != null && !rootType.isAssignableFrom(group.getKey()))
+            {
+                continue;
+            }
+            found.addAll(group.getValue());
+        }
+        candidates[i] = new int[found.size()];
+        for (int k = 0; k < candidates[i].length; ++k) {
+            candidates[i][k] = found.get(k);
+        }
+        matches[i] = new BindingMap[found.size()];
+        tried[i] = new boolean[found.size()];
+    }
+
+    // The bindings of matching fragment i to its k-th candidate, or null
+    private BindingMap match(int i, int k) {
+        if (!tried[i][k]) {
+            tried[i][k] = true;
+            matches[i][k] = fragments.get(i).matches(entities.get(candidates[i][k]));
+        }
+        return matches[i][k];
+    }
+
+    private BindingMap[] solve(int numFragments) {
+        if (numFragments > entities.size()) {
+            return null;
+        }
+        Integer[] order = new Integer[numFragments];
+        for (int i = 0; i < numFragments; ++i) {
+            if (candidates[i].length == 0) {
+                return null;
+            }
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            public int compare(Integer i1, Integer i2) {
+                return candidates[i1].length - candidates[i2].length;
+            }
+        });
+
+        for (int i : order) {
+            if (!assignFreeCandidate(i)) {
+                Arrays.fill(visited, false);
+                if (!augment(i)) {
+                    return null;
+                }
+            }
+        }
+
+        BindingMap[] result = new BindingMap[numFragments];
+        for (int i = 0; i < numFragments; ++i) {
+            result[i] = matches[i][candidateOf[i]];
+        }
+        return result;
+    }
+
+    // The easy case: one of the fragment's candidates hasn't been taken yet
+    private boolean assignFreeCandidate(int i) {
+        for (int k = 0; k < candidates[i].length; ++k) {
+            int j = candidates[i][k];
+            if (fragmentOf[j] == UNASSIGNED && match(i, k) != null) {
+                fragmentOf[j] = i;
+                candidateOf[i] = k;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Looks for a path of reassignments that frees one of the candidates
+    private boolean augment(int i) {
+        for (int k = 0; k < candidates[i].length; ++k) {
+            int j = candidates[i][k];
+            if (visited[j] || match(i, k) == null) {
+                continue;
+            }
+            visited[j] = true;
+            if (fragmentOf[j] == UNASSIGNED || augment(fragmentOf[j])) {
+                fragmentOf[j] = i;
+                candidateOf[i] = k;
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -74,6 +74,10 @@ public class ASTPrinter implements IASTVisitor
                 String.valueOf(property), className(property));
     }
 
+    public boolean visitsSimpleProperties() {
+        return true;
+    }
+
     // a null protected class name extractor
     private String className(Object obj) {
         if (obj == null)
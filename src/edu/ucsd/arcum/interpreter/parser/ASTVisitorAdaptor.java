@@ -46,4 +46,9 @@ public class ASTVisitorAdaptor implements IASTVisitor
         // intentionally left blank
         ;
     }
+
+    // Subclasses that override visitSimpleProperty must override this too
+    public boolean visitsSimpleProperties() {
+        return false;
+    }
 }
\ No newline at end of file
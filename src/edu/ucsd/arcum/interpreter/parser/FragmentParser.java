@@ -1,7 +1,9 @@
 package edu.ucsd.arcum.interpreter.parser;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.core.resources.IProject;
 import org.eclipse.jdt.core.IJavaProject;
@@ -9,6 +11,8 @@ import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.dom.*;
 import org.eclipse.jdt.internal.compiler.impl.CompilerOptions;
 
+import com.google.common.collect.Maps;
+
 import edu.ucsd.arcum.exceptions.ArcumError;
 import edu.ucsd.arcum.exceptions.JavaFragmentCompilationProblem;
 import edu.ucsd.arcum.exceptions.SourceLocation;
@@ -20,6 +24,15 @@ public class FragmentParser
 {
     private static int serialCounter = 0;
 
+    // The same for every parse; made once instead of once for each snippet
+    private static Map compilerOptions;
+
+    // The parameters declared to resolve each type string, keyed by the project
+    // and imports they were resolved in as well as by the string: the same few
+    // types (e.g. java.lang.String) are looked up again for every pattern
+    private static final Map<String, SingleVariableDeclaration> declaredParameters = Maps
+        .newConcurrentHashMap();
+
     private String imports;
     private IJavaProject project;
     private boolean matchingMode;
@@ -141,6 +154,25 @@ public class FragmentParser
     // case can be used legally too.
     private SingleVariableDeclaration declareParameterOfType(String typeString)
         throws JavaFragmentCompilationProblem
+    {
+        String key = String.format("%s%n%s%n%s", (project == null) ? "" : project
+            .getElementName(), imports, typeString);
+        SingleVariableDeclaration result = declaredParameters.get(key);
+        if (result == null) {
+            result = parseParameterOfType(typeString);
+            declaredParameters.put(key, result);
+        }
+        return result;
+    }
+
+    // The types resolved so far may have changed along with the source of the
+    // project
+    public static void clearResolvedTypes() {
+        declaredParameters.clear();
+    }
+
+    private SingleVariableDeclaration parseParameterOfType(String typeString)
+        throws JavaFragmentCompilationProblem
     {
         String name = newTempName();
 
@@ -167,7 +199,7 @@ public class FragmentParser
     {
         ASTParser parser = ASTParser.newParser(AST.JLS3);
         parser.setSource(generatedSource.toCharArray());
-        parser.setCompilerOptions(new CompilerOptions().getMap());
+        parser.setCompilerOptions(getCompilerOptions());
         parser.setProject(project);
         parser.setUnitName(name);
         parser.setResolveBindings(true);
@@ -189,6 +221,14 @@ public class FragmentParser
         return decl;
     }
 
+    // Each parser gets its own copy, in case it changes the options it's given
+    private static synchronized Map getCompilerOptions() {
+        if (compilerOptions == null) {
+            compilerOptions = new CompilerOptions().getMap();
+        }
+        return new HashMap(compilerOptions);
+    }
+
     // parse without resolution
     private static AbstractTypeDeclaration parseTypeDeclaration(String generatedSource) {
         ASTParser parser = ASTParser.newParser(AST.JLS3);
@@ -201,4 +241,8 @@ public class FragmentParser
     public void setMatchingMode(boolean matchingMode) {
         this.matchingMode = matchingMode;
     }
+
+    public String getImports() {
+        return imports;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,178 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.SoftReference;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+
+import com.google.common.collect.Maps;
+
+// A cache of parsed (and binding resolved) compilation units, keyed by the
+// file's path. The most recently used ASTs are held strongly until their
+// estimated total size reaches the byte budget; past that point the least
+// recently used ASTs are demoted to soft references, so they can still be
+// reused until the garbage collector actually needs the memory back.
+//
+// All methods are synchronized, because the traverser and the population
+// threads of the EntityDataBase may use the same cache.
+public class ASTCache
+{
+    // JDT's subtreeBytes only counts the nodes themselves: the resolved bindings
+    // hanging off a CompilationUnit usually take at least as much space again
+    private static final int RESOLVED_AST_OVERHEAD = 3;
+
+    private final LinkedHashMap<String, CacheEntry> strongEntries;
+    private final Map<String, SoftEntry> softEntries;
+    private final ReferenceQueue<CompilationUnit> collected;
+    private long budgetInBytes;
+    private long sizeInBytes;
+
+    private int hits;
+    private int softHits;
+    private int misses;
+    private int evictions;
+    private int collections;
+
+    public ASTCache(long budgetInBytes) {
+        // access ordered, so iteration starts with the least recently used entry
+        this.strongEntries = new LinkedHashMap<String, CacheEntry>(16, 0.75f, true);
+        this.softEntries = Maps.newHashMap();
+        this.collected = new ReferenceQueue<CompilationUnit>();
+        this.budgetInBytes = budgetInBytes;
+        this.sizeInBytes = 0;
+    }
+
+    public synchronized CompilationUnit get(String filePath) {
+        expungeCollectedEntries();
+        CacheEntry entry = strongEntries.get(filePath);
+        if (entry != null) {
+            ++hits;
+            return entry.compilationUnit;
+        }
+        SoftEntry softEntry = softEntries.remove(filePath);
+        if (softEntry != null) {
+            CompilationUnit compilationUnit = softEntry.get();
+            if (compilationUnit != null) {
+                ++softHits;
+                putStrongly(filePath, compilationUnit, softEntry.estimatedSize);
+                return compilationUnit;
+            }
+        }
+        ++misses;
+        return null;
+    }
+
+    public synchronized boolean containsKey(String filePath) {
+        expungeCollectedEntries();
+        if (strongEntries.containsKey(filePath)) {
+            return true;
+        }
+        SoftEntry softEntry = softEntries.get(filePath);
+        return softEntry != null && softEntry.get() != null;
+    }
+
+    public synchronized void put(String filePath, CompilationUnit compilationUnit) {
+        expungeCollectedEntries();
+        remove(filePath);
+        putStrongly(filePath, compilationUnit, estimateSize(compilationUnit));
+    }
+
+    public synchronized boolean remove(String filePath) {
+        CacheEntry entry = strongEntries.remove(filePath);
+        if (entry != null) {
+            sizeInBytes -= entry.estimatedSize;
+            return true;
+        }
+        return softEntries.remove(filePath) != null;
+    }
+
+    public synchronized void clear() {
+        strongEntries.clear();
+        softEntries.clear();
+        sizeInBytes = 0;
+    }
+
+    public synchronized void setBudgetInBytes(long budgetInBytes) {
+        this.budgetInBytes = budgetInBytes;
+        evictToBudget();
+    }
+
+    public synchronized long getSizeInBytes() {
+        return sizeInBytes;
+    }
+
+    public synchronized String getStatistics() {
+        expungeCollectedEntries();
+        return String.format("AST cache: %d hits, %d soft hits, %d misses, %d evictions,"
+            + " %d collected; %d strong (%d of %d KB), %d soft", hits, softHits,
+            misses, evictions, collections, strongEntries.size(), sizeInBytes / 1024,
+            budgetInBytes / 1024, softEntries.size());
+    }
+
+    public static long estimateSize(CompilationUnit compilationUnit) {
+        return (long)compilationUnit.subtreeBytes() * RESOLVED_AST_OVERHEAD;
+    }
+
+    private void putStrongly(String filePath, CompilationUnit compilationUnit,
+        long estimatedSize)
+    {
+        strongEntries.put(filePath, new CacheEntry(compilationUnit, estimatedSize));
+        sizeInBytes += estimatedSize;
+        evictToBudget();
+    }
+
+    // The most recently added entry is never evicted, even when it alone is
+    // larger than the budget: the caller is about to use it
+    private void evictToBudget() {
+        Iterator<Map.Entry<String, CacheEntry>> it = strongEntries.entrySet().iterator();
+        while (sizeInBytes > budgetInBytes && strongEntries.size() > 1) {
+            Map.Entry<String, CacheEntry> eldest = it.next();
+            CacheEntry entry = eldest.getValue();
+            it.remove();
+            sizeInBytes -= entry.estimatedSize;
+            softEntries.put(eldest.getKey(), new SoftEntry(eldest.getKey(),
+                entry.compilationUnit, entry.estimatedSize, collected));
+            ++evictions;
+        }
+    }
+
+    private void expungeCollectedEntries() {
+        Object reference;
+        while ((reference = collected.poll()) != null) {
+            SoftEntry softEntry = (SoftEntry)reference;
+            // only remove the mapping if it hasn't been replaced since
+            if (softEntries.get(softEntry.filePath) == softEntry) {
+                softEntries.remove(softEntry.filePath);
+                ++collections;
+            }
+        }
+    }
+
+    private static class CacheEntry
+    {
+        private final CompilationUnit compilationUnit;
+        private final long estimatedSize;
+
+        public CacheEntry(CompilationUnit compilationUnit, long estimatedSize) {
+            this.compilationUnit = compilationUnit;
+            this.estimatedSize = estimatedSize;
+        }
+    }
+
+    private static class SoftEntry extends SoftReference<CompilationUnit>
+    {
+        private final String filePath;
+        private final long estimatedSize;
+
+        public SoftEntry(String filePath, CompilationUnit compilationUnit,
+            long estimatedSize, ReferenceQueue<CompilationUnit> queue)
+        {
+            super(compilationUnit, queue);
+            this.filePath = filePath;
+            this.estimatedSize = estimatedSize;
+        }
+    }
+}
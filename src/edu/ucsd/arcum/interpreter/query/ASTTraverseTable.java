@@ -3,14 +3,11 @@ package edu.ucsd.arcum.interpreter.query;
 import java.lang.reflect.Method;
 import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.StructuralPropertyDescriptor;
 
-import com.google.common.collect.Maps;
-
 import edu.ucsd.arcum.util.ClassImplements;
 
 // A traverse table can inspect AST nodes and invoke the property descriptor
@@ -18,54 +15,91 @@ import edu.ucsd.arcum.util.ClassImplements;
 // of the node's children).
 //
 // To avoid recomputing the same relations all instances share the same lookup
-// table.
+// table. For each node class it holds the class's property descriptors, both
+// all of them and just the ones that lead to child nodes, with the kind of
+// each descriptor decoded once and the ChildAccessor that reads it. The table
+// is indexed by node type instead of by class, so finding a node's entry is an
+// array access.
+//
+// Most visitors ignore simple properties (identifiers, operators, flags, and
+// so on); for those the edges of the simple properties aren't visited at all,
+// see IASTVisitor.visitsSimpleProperties.
 public class ASTTraverseTable
 {
-    private static final Map<Class<? extends ASTNode>, StructuralPropertyDescriptor[]> lookup;
+    private static final int SIMPLE = 0;
+    private static final int CHILD = 1;
+    private static final int CHILD_LIST = 2;
+
+    // Big enough for the node types of JLS3; the classes of any node types
+    // beyond it still work, but their entries are recomputed each time
+    private static final int MAX_NODE_TYPE = 128;
+
+    // Entries are immutable, so a thread that races another one to fill in the
+    // same entry only does redundant work
+    private static final NodeClassEntry[] lookup;
 
     static {
         // POSSIBLE_ECLIPSE_BUG: try: ASTTraversTable.lookup = ...
-        lookup = Maps.newConcurrentHashMap();
+        lookup = new NodeClassEntry[MAX_NODE_TYPE];
     }
 
     public void traverseAST(ASTNode node, IASTVisitor visitor) {
-        traverseNode(node, node.getLocationInParent(), visitor);
+        boolean simpleProperties = visitor.visitsSimpleProperties();
+        traverseNode(node, node.getLocationInParent(), visitor, simpleProperties);
     }
 
     private void traverseNode(ASTNode node, StructuralPropertyDescriptor edge,
-        IASTVisitor visitor)
+        IASTVisitor visitor, boolean simpleProperties)
     {
         boolean visitChildren = visitor.visitASTNode(node, edge);
 
         if (visitChildren) {
-            StructuralPropertyDescriptor[] spds = getProperties(node);
-            for (StructuralPropertyDescriptor spd : spds) {
+            NodeClassEntry entry = getEntry(node);
+            StructuralPropertyDescriptor[] spds;
+            int[] kinds;
+            ChildAccessor[] accessors;
+            if (simpleProperties) {
+                spds = entry.properties;
+                kinds = entry.kinds;
+                accessors = entry.accessors;
+            }
+            else {
+                spds = entry.childProperties;
+                kinds = entry.childKinds;
+                accessors = entry.childAccessors;
+            }
+            for (int i = 0; i < spds.length; ++i) {
+                StructuralPropertyDescriptor spd = spds[i];
                 boolean doVisit = visitor.beforeVisitEdge(node, spd);
                 if (!doVisit) {
                     continue;
                 }
 
-                Object property = node.getStructuralProperty(spd);
+                Object property = accessors[i].get(node);
 
-                if (spd.isSimpleProperty()) {
+                switch (kinds[i]) {
+                case SIMPLE:
                     visitor.visitSimpleProperty(property, spd);
-                }
-                else if (spd.isChildProperty()) {
+                    break;
+                case CHILD:
                     ASTNode child = (ASTNode)property;
-                    traverseNode(child, spd, visitor);
-                }
-                else if (spd.isChildListProperty()) {
+                    traverseNode(child, spd, visitor, simpleProperties);
+                    break;
+                case CHILD_LIST:
                     List children = (List)property;
                     boolean iterate = visitor.preVisitASTNodeList(node, children, spd);
                     if (iterate) {
-                        for (Object obj : children) {
-                            traverseNode((ASTNode)obj, spd, visitor);
+                        // index instead of iterator: no allocation per list
+                        for (int j = 0; j < children.size(); ++j) {
+                            ASTNode element = (ASTNode)children.get(j);
+                            traverseNode(element, spd, visitor, simpleProperties);
                             visitor.postVisitASTNodeListElement(spd, children);
                         }
                     }
-                }
-                else
+                    break;
+                default:
                     assert false;
+                }
 
                 visitor.afterVisitEdge(node, spd);
             }
@@ -76,27 +110,41 @@ public class ASTTraverseTable
     public static StructuralPropertyDescriptor[] getProperties(
         @ClassImplements(PropertyDescriptorAccessor.class) ASTNode node)
     {
+        return getEntry(node).properties;
+    }
+
+    private static NodeClassEntry getEntry(ASTNode node) {
+        int nodeType = node.getNodeType();
+        if (nodeType >= MAX_NODE_TYPE) {
+            return new NodeClassEntry(findProperties(node.getClass()));
+        }
+        NodeClassEntry entry = lookup[nodeType];
+        if (entry == null) {
+            entry = new NodeClassEntry(findProperties(node.getClass()));
+            lookup[nodeType] = entry;
+        }
+        return entry;
+    }
+
+    private static StructuralPropertyDescriptor[] findProperties(
+        Class<? extends ASTNode> nodeClass)
+    {
 //        List properties = (List)ClassMethod.invoke(PropertyDescriptorAccessor.class, node.getClass(), AST.JLS3);
-        Class<? extends ASTNode> nodeClass = node.getClass();
-        StructuralPropertyDescriptor[] spds = lookup.get(nodeClass);
-        if (spds == null) {
-            try {
-                Method method;
-                List properties;
-
-                method = nodeClass.getMethod("propertyDescriptors", int.class);
-                properties = (List)method.invoke(nodeClass, AST.JLS3);
-                spds = toArray(properties);
-                lookup.put(nodeClass, spds);
-            }
-            catch (RuntimeException e) {
-                throw e;
-            }
-            catch (Exception e) {
-                e.printStackTrace();
-            }
+        try {
+            Method method;
+            List properties;
+
+            method = nodeClass.getMethod("propertyDescriptors", int.class);
+            properties = (List)method.invoke(nodeClass, AST.JLS3);
+            return toArray(properties);
+        }
+        catch (RuntimeException e) {
+            throw e;
+        }
+        catch (Exception e) {
+            e.printStackTrace();
+            return new StructuralPropertyDescriptor[0];
         }
-        return spds;
     }
 
     private static StructuralPropertyDescriptor[] toArray(List list) {
@@ -110,10 +158,11 @@ public class ASTTraverseTable
     }
 
     private static List<ASTNode> subNodes(ASTNode node) {
-        StructuralPropertyDescriptor[] properties = getProperties(node);
+        NodeClassEntry entry = getEntry(node);
         List<ASTNode> result = new ArrayList<ASTNode>();
-        for (StructuralPropertyDescriptor spd : properties) {
-            Object property = node.getStructuralProperty(spd);
+        for (int i = 0; i < entry.childProperties.length; ++i) {
+            StructuralPropertyDescriptor spd = entry.childProperties[i];
+            Object property = entry.childAccessors[i].get(node);
             if (spd.isChildProperty()) {
                 result.add((ASTNode)property);
             }
@@ -126,4 +175,54 @@ public class ASTTraverseTable
         }
         return result;
     }
+
+    private static class NodeClassEntry
+    {
+        private final StructuralPropertyDescriptor[] properties;
+        private final int[] kinds;
+        private final ChildAccessor[] accessors;
+        private final StructuralPropertyDescriptor[] childProperties;
+        private final int[] childKinds;
+        private final ChildAccessor[] childAccessors;
+
+        public NodeClassEntry(StructuralPropertyDescriptor[] properties) {
+            int numChildProperties = 0;
+            for (StructuralPropertyDescriptor spd : properties) {
+                if (!spd.isSimpleProperty()) {
+                    ++numChildProperties;
+                }
+            }
+            this.properties = properties;
+            this.kinds = new int[properties.length];
+            this.accessors = new ChildAccessor[properties.length];
+            this.childProperties = new StructuralPropertyDescriptor[numChildProperties];
+            this.childKinds = new int[numChildProperties];
+            this.childAccessors = new ChildAccessor[numChildProperties];
+
+            int j = 0;
+            for (int i = 0; i < properties.length; ++i) {
+                StructuralPropertyDescriptor spd = properties[i];
+                kinds[i] = kindOf(spd);
+                accessors[i] = ChildAccessor.forProperty(spd);
+                if (kinds[i] != SIMPLE) {
+                    childProperties[j] = spd;
+                    childKinds[j] = kinds[i];
+                    childAccessors[j] = accessors[i];
+                    ++j;
+                }
+            }
+        }
+
+        private static int kindOf(StructuralPropertyDescriptor spd) {
+            if (spd.isSimpleProperty()) {
+                return SIMPLE;
+            }
+            else if (spd.isChildProperty()) {
+                return CHILD;
+            }
+            else {
+                return CHILD_LIST;
+            }
+        }
+    }
 }
@@ -0,0 +1,106 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import java.util.Set;
+
+import org.eclipse.jdt.core.dom.*;
+
+import com.google.common.collect.Sets;
+
+// A summary of what the other compilation units can see of a unit: the keys
+// and modifiers of its non-private types and members, along with the types they
+// are declared with and the values of its constants. When an edit leaves the
+// signature of a unit unchanged, the bindings resolved in the units that depend
+// on it are still valid, and so only the edited unit has to be traversed again.
+final class ApiSignature
+{
+    private final StringBuilder buffer;
+
+    private ApiSignature() {
+        this.buffer = new StringBuilder();
+    }
+
+    public static String of(CompilationUnit compilationUnit) {
+        ApiSignature signature = new ApiSignature();
+        for (Object type : compilationUnit.types()) {
+            AbstractTypeDeclaration atd = (AbstractTypeDeclaration)type;
+            signature.appendType(atd.resolveBinding());
+        }
+        return signature.buffer.toString();
+    }
+
+    // The simple names of the types declared in the unit, member types included:
+    // a unit can only use one of them by naming it or its enclosing type
+    public static Set<String> declaredTypeNames(CompilationUnit compilationUnit) {
+        final Set<String> result = Sets.newHashSet();
+        compilationUnit.accept(new ASTVisitor() {
+            @Override public boolean visit(TypeDeclaration node) {
+                result.add(node.getName().getIdentifier());
+                return true;
+            }
+
+            @Override public boolean visit(EnumDeclaration node) {
+                result.add(node.getName().getIdentifier());
+                return true;
+            }
+
+            @Override public boolean visit(AnnotationTypeDeclaration node) {
+                result.add(node.getName().getIdentifier());
+                return true;
+            }
+        });
+        return result;
+    }
+
+    // Every identifier that appears in the unit. A unit that depends on a type
+    // names it, or else names the member whose type it is, in which case it
+    // depends on that member's unit too.
+    public static Set<String> referencedNames(CompilationUnit compilationUnit) {
+        final Set<String> result = Sets.newHashSet();
+        compilationUnit.accept(new ASTVisitor() {
+            @Override public boolean visit(SimpleName node) {
+                result.add(node.getIdentifier());
+                return false;
+            }
+        });
+        return result;
+    }
+
+    private void appendType(ITypeBinding type) {
+        if (type == null || Modifier.isPrivate(type.getModifiers())) {
+            return;
+        }
+        append("type", type.getKey(), type.getModifiers());
+        appendKey(type.getSuperclass());
+        for (ITypeBinding superInterface : type.getInterfaces()) {
+            appendKey(superInterface);
+        }
+        for (IVariableBinding field : type.getDeclaredFields()) {
+            if (!Modifier.isPrivate(field.getModifiers())) {
+                append("field", field.getKey(), field.getModifiers());
+                appendKey(field.getType());
+                buffer.append(field.getConstantValue()).append(';');
+            }
+        }
+        for (IMethodBinding method : type.getDeclaredMethods()) {
+            if (!Modifier.isPrivate(method.getModifiers())) {
+                append("method", method.getKey(), method.getModifiers());
+                appendKey(method.getReturnType());
+                for (ITypeBinding exception : method.getExceptionTypes()) {
+                    appendKey(exception);
+                }
+            }
+        }
+        for (ITypeBinding memberType : type.getDeclaredTypes()) {
+            appendType(memberType);
+        }
+    }
+
+    private void append(String kind, String key, int modifiers) {
+        buffer.append('\n').append(kind).append(' ').append(key).append(' ');
+        buffer.append(modifiers).append(';');
+    }
+
+    private void appendKey(ITypeBinding type) {
+        buffer.append((type == null) ? null : type.getKey()).append(';');
+    }
+}
@@ -9,8 +9,10 @@ import static java.util.Collections.synchronizedMap;
 import java.io.PrintStream;
 import java.util.*;
 
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
 import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
 
 import edu.ucsd.arcum.ArcumPlugin;
 import edu.ucsd.arcum.builders.ParseArcumCodeOperation;
@@ -43,11 +45,33 @@ public class ArcumDeclarationTable
 
     // Creates a new symbol table and associates it with the given project
     public static ArcumDeclarationTable newSymbolTable(IProject project) {
+        return newSymbolTable(project, null, Collections.<IFile> emptyList());
+    }
+
+    // As above, but the new table reuses the given entity database (which may
+    // be null) instead of populating a new one. The Java files changed since
+    // the database was populated are only traversed again once the concepts
+    // are type checked, and only if the database still covers what they need.
+    public static ArcumDeclarationTable newSymbolTable(IProject project,
+        EntityDataBase entityDataBase, Collection<IFile> changedJavaFiles)
+    {
         ArcumDeclarationTable symbTab = new ArcumDeclarationTable(project);
+        symbTab.entityDataBase = entityDataBase;
+        symbTab.changedJavaFiles = changedJavaFiles;
         arcumDeclarationTables.put(project, symbTab);
         return symbTab;
     }
 
+    // The entity database of the project's current symbol table, or null if
+    // there isn't one yet
+    public static EntityDataBase lookupEntityDataBase(IProject project) {
+        ArcumDeclarationTable declarationTable = arcumDeclarationTables.get(project);
+        if (declarationTable == null) {
+            return null;
+        }
+        return declarationTable.entityDataBase;
+    }
+
     // The "_" is a special variable that matches anything, a "don't care"; this
     // can only be used in patterns for pure matching: cannot be used in patterns
     // for code generation
@@ -55,16 +79,22 @@ public class ArcumDeclarationTable
 
     private Map<String, TopLevelConstruct> allDeclarations;
     private IProject project;
+    // what the concepts can ask the entity database for, valid after typeCheck
+    private EntityRequirements entityRequirements;
 
     // valid after makeEntityTables is called
     private Map<String, OptionMatchTable> entityTableLookup;
     private EntityDataBase entityDataBase;
+    // not yet reflected in the reused entity database
+    private Collection<IFile> changedJavaFiles;
 
     private ArcumDeclarationTable(IProject project) {
         this.project = project;
         this.allDeclarations = new LinkedHashMap<String, TopLevelConstruct>();
         this.entityTableLookup = new HashMap<String, OptionMatchTable>();
         this.entityDataBase = null;
+        this.changedJavaFiles = Collections.emptyList();
+        this.entityRequirements = EntityRequirements.EVERYTHING;
 
 //        parseBuiltinConcepts();
     }
@@ -92,15 +122,24 @@ public class ArcumDeclarationTable
         });
         checkNames(allGlobalNames, IDENTITY_ACCESSOR);
 
-        for (OptionInterface optionInterface : subset(decls, OptionInterface.class)) {
-            optionInterface.doTypeCheck(this);
+        EntityRequirements.beginCollecting();
+        try {
+            for (OptionInterface optionInterface : subset(decls, OptionInterface.class)) {
+                optionInterface.doTypeCheck(this);
+            }
+            for (Option option : subset(decls, Option.class)) {
+                option.doTypeCheck(this);
+            }
+            Subset<RequireMap> requireMaps = subset(decls, RequireMap.class);
+            for (RequireMap requireMap : requireMaps) {
+                requireMap.doTypeCheck(this);
+            }
         }
-        for (Option option : subset(decls, Option.class)) {
-            option.doTypeCheck(this);
+        finally {
+            this.entityRequirements = EntityRequirements.endCollecting();
         }
-        Subset<RequireMap> requireMaps = subset(decls, RequireMap.class);
-        for (RequireMap requireMap : requireMaps) {
-            requireMap.doTypeCheck(this);
+        if (ArcumPlugin.DEBUG) {
+            System.out.printf("Entity requirements: %s%n", entityRequirements);
         }
 
         if (false && ArcumPlugin.DEBUG) {
@@ -125,7 +164,16 @@ public class ArcumDeclarationTable
     }
 
     public List<OptionMatchTable> makeEntityTables() throws CoreException {
+        return makeEntityTables(null);
+    }
+
+    // Same as above, but if the Java code still needs to be traversed progress
+    // is reported to the given monitor instead of a dialog
+    public List<OptionMatchTable> makeEntityTables(IProgressMonitor monitor)
+        throws CoreException
+    {
         this.entityTableLookup.clear();
+        populateEntityDataBase(monitor);
 
         List<OptionMatchTable> result = new ArrayList<OptionMatchTable>();
         for (ResolvedConceptMapEntry binding : getAllResolvedBindings()) {
@@ -200,11 +248,8 @@ public class ArcumDeclarationTable
     private OptionMatchTable makeEntityTable(ResolvedConceptMapEntry binding)
         throws CoreException
     {
-        if (entityDataBase == null) {
-            entityDataBase = new EntityDataBase(project);
-            entityDataBase.populate();
-        }
-        
+        populateEntityDataBase(null);
+
         OptionMatchTable entities = new OptionMatchTable(this, binding);
         entities.matchAllEntities(entityDataBase);
         boolean passed = entities.checkExtraDefinitionConditions(entityDataBase);
@@ -219,6 +264,24 @@ public class ArcumDeclarationTable
         return entities;
     }
 
+    // A reused database is thrown away if the concepts now need entities that
+    // it didn't track; otherwise only the changed Java files are traversed again
+    private void populateEntityDataBase(IProgressMonitor monitor) throws CoreException {
+        if (entityDataBase != null
+            && !entityDataBase.getRequirements().covers(entityRequirements))
+        {
+            entityDataBase = null;
+        }
+        if (entityDataBase == null) {
+            entityDataBase = new EntityDataBase(project, entityRequirements);
+            entityDataBase.populate(monitor);
+        }
+        else if (!changedJavaFiles.isEmpty()) {
+            entityDataBase.updateCompilationUnits(changedJavaFiles, monitor);
+        }
+        changedJavaFiles = Collections.emptyList();
+    }
+
     public void disposeEntityTable(String optionArgs) {
         entityTableLookup.remove(optionArgs);
     }
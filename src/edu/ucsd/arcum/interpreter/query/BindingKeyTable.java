@@ -0,0 +1,107 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import static com.google.common.base.ReferenceType.STRONG;
+import static com.google.common.base.ReferenceType.WEAK;
+
+import java.util.List;
+import java.util.concurrent.ConcurrentMap;
+
+import org.eclipse.jdt.core.dom.IBinding;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.ReferenceMap;
+
+// Gives each distinct binding key a dense int id, so that bindings can be
+// compared, and used to look up their declarations, by id instead of by their
+// (long) key strings. The ids are only meaningful within one session.
+//
+// The same binding objects are asked for their ids again and again while
+// matching, so the id of each binding is also remembered by identity. The
+// bindings are only weakly referenced, so the table doesn't keep the binding
+// environment of a parse alive.
+//
+// The keys are only dropped by clear, which the EntityDataBase calls when it is
+// populated from scratch and no other project's database can still hold ids.
+public final class BindingKeyTable
+{
+    // The id of a binding without a key: never the same as another binding's
+    public static final int NO_ID = -1;
+
+    private static final ConcurrentMap<String, Integer> ids = Maps
+        .newConcurrentHashMap();
+    private static final List<String> keys = Lists.newArrayList();
+    private static final ReferenceMap<IBinding, Integer> bindingIds;
+
+    static {
+        bindingIds = new ReferenceMap<IBinding, Integer>(WEAK, STRONG);
+    }
+
+    private BindingKeyTable() {
+    }
+
+    // Safe to call from any thread: the EntityDataBase is populated in parallel
+    public static int getId(IBinding binding) {
+        if (binding == null) {
+            return NO_ID;
+        }
+        Integer result = bindingIds.get(binding);
+        if (result == null) {
+            result = getId(binding.getKey());
+            bindingIds.put(binding, result);
+        }
+        return result;
+    }
+
+    public static int getId(String key) {
+        if (key == null) {
+            return NO_ID;
+        }
+        Integer result = ids.get(key);
+        if (result == null) {
+            synchronized (keys) {
+                result = ids.get(key);
+                if (result == null) {
+                    result = keys.size();
+                    keys.add(key);
+                    ids.put(key, result);
+                }
+            }
+        }
+        return result;
+    }
+
+    public static String getKey(int id) {
+        synchronized (keys) {
+            return keys.get(id);
+        }
+    }
+
+    // Forgets every key, so all ids given out so far become meaningless; only
+    // safe when nothing that holds one of them is used again
+    public static void clear() {
+        synchronized (keys) {
+            keys.clear();
+            ids.clear();
+            bindingIds.clear();
+        }
+        BindingKeyValue.clearCache();
+    }
+
+    // The same as b1.isEqualTo(b2), without comparing the keys as strings. A null
+    // binding (which can't be resolved) is never the same as another binding.
+    public static boolean sameBinding(IBinding b1, IBinding b2) {
+        if (b1 == null || b2 == null) {
+            return false;
+        }
+        if (b1 == b2) {
+            return true;
+        }
+        int id1 = getId(b1);
+        int id2 = getId(b2);
+        if (id1 == NO_ID || id2 == NO_ID) {
+            return b1.isEqualTo(b2);
+        }
+        return id1 == id2;
+    }
+}
@@ -10,21 +10,25 @@ import edu.ucsd.arcum.exceptions.ArcumError;
 
 // All IBinding instances define a getKey method that returns a unique key that
 // represents that particular binding. Instances of this class serve as a wrapper
-// around that String value.
+// around that String value, and are compared by the value's id in the
+// BindingKeyTable.
 public final class BindingKeyValue
 {
-    private static final Map<String, BindingKeyValue> cache = Maps.newHashMap();
-    private static final Map<String, IBinding> lookup = Maps.newHashMap();
+    private static final Map<Integer, BindingKeyValue> cache = Maps.newHashMap();
+    private static final Map<Integer, IBinding> lookup = Maps.newHashMap();
     private final EntityType type;
-    private final String key;
+    private final int id;
 
-    public static BindingKeyValue newInstance(EntityType type, IBinding binding) {
-        String key = binding.getKey();
-        BindingKeyValue result = cache.get(key);
+    // synchronized because the EntityDataBase can be populated in parallel
+    public static synchronized BindingKeyValue newInstance(EntityType type,
+        IBinding binding)
+    {
+        int id = BindingKeyTable.getId(binding);
+        BindingKeyValue result = cache.get(id);
         if (result == null) {
-            result = new BindingKeyValue(type, key);
-            cache.put(key, result);
-            lookup.put(key, binding);
+            result = new BindingKeyValue(type, id);
+            cache.put(id, result);
+            lookup.put(id, binding);
         }
         else {
             if (result.type != type) {
@@ -34,13 +38,21 @@ public final class BindingKeyValue
         return result;
     }
 
+    // Called when the BindingKeyTable is cleared
+    static synchronized void clearCache() {
+        cache.clear();
+        lookup.clear();
+    }
+
     public IBinding getOriginalBinding() {
-        return lookup.get(key);
+        synchronized (BindingKeyValue.class) {
+            return lookup.get(id);
+        }
     }
 
-    private BindingKeyValue(EntityType type, String key) {
+    private BindingKeyValue(EntityType type, int id) {
         this.type = type;
-        this.key = key;
+        this.id = id;
     }
 
     public EntityType getType() {
@@ -48,11 +60,15 @@ public final class BindingKeyValue
     }
 
     public String getKey() {
-        return key;
+        return BindingKeyTable.getKey(id);
+    }
+
+    public int getId() {
+        return id;
     }
     
     @Override public int hashCode() {
-        return key.hashCode();
+        return id;
     }
     
     @Override public boolean equals(Object obj) {
@@ -60,10 +76,10 @@ public final class BindingKeyValue
             return false;
         }
         BindingKeyValue that = (BindingKeyValue)obj;
-        return this.key.equals(that.key);
+        return this.id == that.id;
     }
     
     @Override public String toString() {
-        return this.key;
+        return getKey();
     }
 }
\ No newline at end of file
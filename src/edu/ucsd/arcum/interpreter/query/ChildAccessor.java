@@ -0,0 +1,254 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import java.util.Map;
+
+import org.eclipse.jdt.core.dom.*;
+
+import com.google.common.collect.Maps;
+
+// Reads one structural property of a node. For the child properties of the
+// most common node classes the accessor calls the node's getter directly;
+// every other property goes through getStructuralProperty, which tests the
+// kind of the descriptor and then compares it with each of the node class's
+// descriptors in turn.
+abstract class ChildAccessor
+{
+    private static final Map<StructuralPropertyDescriptor, ChildAccessor> direct = Maps
+        .newHashMap();
+
+    public abstract Object get(ASTNode node);
+
+    public static ChildAccessor forProperty(final StructuralPropertyDescriptor spd) {
+        ChildAccessor result = direct.get(spd);
+        if (result == null) {
+            result = new ChildAccessor() {
+                @Override public Object get(ASTNode node) {
+                    return node.getStructuralProperty(spd);
+                }
+            };
+        }
+        return result;
+    }
+
+    private static void add(StructuralPropertyDescriptor spd, ChildAccessor accessor) {
+        direct.put(spd, accessor);
+    }
+
+    // The node classes that make up most of a typical compilation unit, in
+    // descending order of frequency (SimpleName and the other leaves have no
+    // child properties)
+    static {
+        add(SimpleType.NAME_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((SimpleType)node).getName();
+            }
+        });
+
+        add(QualifiedName.QUALIFIER_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((QualifiedName)node).getQualifier();
+            }
+        });
+        add(QualifiedName.NAME_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((QualifiedName)node).getName();
+            }
+        });
+
+        add(MethodInvocation.EXPRESSION_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((MethodInvocation)node).getExpression();
+            }
+        });
+        add(MethodInvocation.TYPE_ARGUMENTS_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((MethodInvocation)node).typeArguments();
+            }
+        });
+        add(MethodInvocation.NAME_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((MethodInvocation)node).getName();
+            }
+        });
+        add(MethodInvocation.ARGUMENTS_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((MethodInvocation)node).arguments();
+            }
+        });
+
+        add(Block.STATEMENTS_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((Block)node).statements();
+            }
+        });
+
+        add(ExpressionStatement.EXPRESSION_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((ExpressionStatement)node).getExpression();
+            }
+        });
+
+        add(VariableDeclarationFragment.NAME_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((VariableDeclarationFragment)node).getName();
+            }
+        });
+        add(VariableDeclarationFragment.INITIALIZER_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((VariableDeclarationFragment)node).getInitializer();
+            }
+        });
+
+        add(VariableDeclarationStatement.MODIFIERS2_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((VariableDeclarationStatement)node).modifiers();
+            }
+        });
+        add(VariableDeclarationStatement.TYPE_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((VariableDeclarationStatement)node).getType();
+            }
+        });
+        add(VariableDeclarationStatement.FRAGMENTS_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((VariableDeclarationStatement)node).fragments();
+            }
+        });
+
+        add(SingleVariableDeclaration.MODIFIERS2_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((SingleVariableDeclaration)node).modifiers();
+            }
+        });
+        add(SingleVariableDeclaration.TYPE_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((SingleVariableDeclaration)node).getType();
+            }
+        });
+        add(SingleVariableDeclaration.NAME_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((SingleVariableDeclaration)node).getName();
+            }
+        });
+        add(SingleVariableDeclaration.INITIALIZER_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((SingleVariableDeclaration)node).getInitializer();
+            }
+        });
+
+        add(ReturnStatement.EXPRESSION_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((ReturnStatement)node).getExpression();
+            }
+        });
+
+        add(ParameterizedType.TYPE_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((ParameterizedType)node).getType();
+            }
+        });
+        add(ParameterizedType.TYPE_ARGUMENTS_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((ParameterizedType)node).typeArguments();
+            }
+        });
+
+        add(IfStatement.EXPRESSION_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((IfStatement)node).getExpression();
+            }
+        });
+        add(IfStatement.THEN_STATEMENT_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((IfStatement)node).getThenStatement();
+            }
+        });
+        add(IfStatement.ELSE_STATEMENT_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((IfStatement)node).getElseStatement();
+            }
+        });
+
+        add(ImportDeclaration.NAME_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((ImportDeclaration)node).getName();
+            }
+        });
+
+        add(Assignment.LEFT_HAND_SIDE_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((Assignment)node).getLeftHandSide();
+            }
+        });
+        add(Assignment.RIGHT_HAND_SIDE_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((Assignment)node).getRightHandSide();
+            }
+        });
+
+        add(InfixExpression.LEFT_OPERAND_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((InfixExpression)node).getLeftOperand();
+            }
+        });
+        add(InfixExpression.RIGHT_OPERAND_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((InfixExpression)node).getRightOperand();
+            }
+        });
+        add(InfixExpression.EXTENDED_OPERANDS_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((InfixExpression)node).extendedOperands();
+            }
+        });
+
+        add(ClassInstanceCreation.EXPRESSION_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((ClassInstanceCreation)node).getExpression();
+            }
+        });
+        add(ClassInstanceCreation.TYPE_ARGUMENTS_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((ClassInstanceCreation)node).typeArguments();
+            }
+        });
+        add(ClassInstanceCreation.TYPE_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((ClassInstanceCreation)node).getType();
+            }
+        });
+        add(ClassInstanceCreation.ARGUMENTS_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((ClassInstanceCreation)node).arguments();
+            }
+        });
+        add(ClassInstanceCreation.ANONYMOUS_CLASS_DECLARATION_PROPERTY,
+            new ChildAccessor() {
+                @Override public Object get(ASTNode node) {
+                    return ((ClassInstanceCreation)node).getAnonymousClassDeclaration();
+                }
+            });
+
+        add(FieldAccess.EXPRESSION_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((FieldAccess)node).getExpression();
+            }
+        });
+        add(FieldAccess.NAME_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((FieldAccess)node).getName();
+            }
+        });
+
+        add(CastExpression.TYPE_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((CastExpression)node).getType();
+            }
+        });
+        add(CastExpression.EXPRESSION_PROPERTY, new ChildAccessor() {
+            @Override public Object get(ASTNode node) {
+                return ((CastExpression)node).getExpression();
+            }
+        });
+    }
+}
@@ -0,0 +1,50 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Lists;
+
+import edu.ucsd.arcum.interpreter.satisfier.BindingMap;
+import edu.ucsd.arcum.interpreter.satisfier.BindingsSet;
+
+// A search over a list of candidates that is split into consecutive chunks,
+// each searched by a task of its own. The tasks only collect the maps they
+// find; the maps of all the chunks are then added to one set in the order of
+// the chunks. So the result is the same as searching the whole list at once:
+// the same maps, in the same order. (Deduplicating within each chunk first
+// could keep other maps, because maps that compare equal to a third one don't
+// always compare equal to each other.)
+//
+// The tasks are plain Callables on a fixed pool rather than ForkJoinPool tasks,
+// because the plug-in targets Java 6 (Bundle-RequiredExecutionEnvironment
+// JavaSE-1.6), which has no ForkJoinPool.
+abstract class ChunkedSearch<T>
+{
+    // Finds the maps of one chunk, in order; called on a worker thread
+    protected abstract List<BindingMap> search(List<T> chunk);
+
+    public BindingsSet run(List<T> candidates, int numChunks, ExecutorService executor)
+    {
+        int chunkSize = (candidates.size() + numChunks - 1) / numChunks;
+        List<Future<List<BindingMap>>> pending = Lists.newArrayList();
+        for (int start = 0; start < candidates.size(); start += chunkSize) {
+            int end = Math.min(start + chunkSize, candidates.size());
+            final List<T> chunk = candidates.subList(start, end);
+            pending.add(executor.submit(new Callable<List<BindingMap>>() {
+                public List<BindingMap> call() {
+                    return search(chunk);
+                }
+            }));
+        }
+        BindingsSet result = BindingsSet.newEmptySet();
+        for (Future<List<BindingMap>> chunkResult : pending) {
+            for (BindingMap theta : EntityDataBase.getResult(chunkResult)) {
+                result.addEntry(theta);
+            }
+        }
+        return result;
+    }
+}
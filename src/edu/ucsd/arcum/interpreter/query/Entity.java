@@ -19,6 +19,11 @@ import edu.ucsd.arcum.util.SystemUtil;
 
 public abstract class Entity
 {
+    // The comparisonHash of an entity that compareTo can find equal to entities
+    // with different hashes, and so can't be filed by its hash
+    public static final int NO_HASH = Integer.MIN_VALUE;
+    private static final int OTHER_HASH = 37;
+
     public static boolean isModifiersEdge(StructuralPropertyDescriptor edge) {
         return edge == TypeDeclaration.MODIFIERS2_PROPERTY
             || edge == EnumDeclaration.MODIFIERS2_PROPERTY
@@ -83,8 +88,8 @@ public abstract class Entity
         return result;
     }
 
-    // MONDAY: Consider ITypeBinding and IMethodBindings to be canonicalized and
-    // represented as the keys (as Strings)
+    // Bindings are compared by the ids of their keys in the BindingKeyTable, so
+    // no key strings are compared here
     public static int compareTo(Object thiz, Object that) {
         if (thiz == that || thiz.equals(that)) {
             return 0;
@@ -166,8 +171,16 @@ public abstract class Entity
                             return 0;
                     }
                 }
-                result = ((ASTNode)thiz).subtreeMatch(
-                    new ModuloQualificationASTMatcher(), that);
+                // subtrees with different structural hashes can't match
+                if (that instanceof ASTNode
+                    && !StructuralHash.mayMatch((ASTNode)thiz, (ASTNode)that))
+                {
+                    result = false;
+                }
+                else {
+                    result = ((ASTNode)thiz).subtreeMatch(
+                        new ModuloQualificationASTMatcher(), that);
+                }
             }
             else {
                 result = false;
@@ -181,6 +194,131 @@ public abstract class Entity
         }
     }
 
+    // Entities that compareTo finds equal have the same hash, unless one of them
+    // hashes to NO_HASH. Entities of different kinds can be equal (e.g., a name
+    // and a type binding, or a method's binding and its declaration), and
+    // compareTo also finds entities equal when their display strings are, so
+    // what can stand for a type is hashed by its name as displayed, with the
+    // qualifiers taken out: names, types and strings by their text, type
+    // bindings by their qualified names, and type declarations by their
+    // identifiers. When an entity's type binding has another name (e.g., a
+    // variable's name, which is equal both to its identifier and to its type)
+    // it is equal to entities with different hashes, and so it isn't hashed.
+    // Modifiers hash by their keywords, and methods by their names. Any other
+    // node is either compared by identity or structurally, and so is hashed
+    // structurally.
+    public static int comparisonHash(@Union("Entity") Object entity) {
+        if (entity instanceof Name) {
+            Name name = (Name)entity;
+            return typeNameHash(name.getFullyQualifiedName(), name.resolveTypeBinding());
+        }
+        else if (entity instanceof Type) {
+            Type type = (Type)entity;
+            return typeNameHash(type.toString(), type.resolveBinding());
+        }
+        else if (entity instanceof String) {
+            return typeNameHash((String)entity, null);
+        }
+        else if (entity instanceof ITypeBinding) {
+            String qualifiedName = ((ITypeBinding)entity).getQualifiedName();
+            String unqualified = unqualifiedName(qualifiedName);
+            // an unresolved type is also equal to the last segment: e.g., B is
+            // equal to "? extends p.B"
+            String lastSegment = qualifiedName.substring(qualifiedName
+                .lastIndexOf('.') + 1);
+            if (!lastSegment.equals(unqualified) && lastSegment.indexOf('>') == -1) {
+                return NO_HASH;
+            }
+            return unqualified.hashCode();
+        }
+        else if (entity instanceof AbstractTypeDeclaration) {
+            AbstractTypeDeclaration decl = (AbstractTypeDeclaration)entity;
+            ITypeBinding binding = decl.resolveBinding();
+            if (binding == null) {
+                // compared to type bindings by the binding of its source
+                return NO_HASH;
+            }
+            return typeNameHash(decl.getName().getIdentifier(), binding);
+        }
+        else if (entity instanceof IBinding) {
+            return entity.hashCode();
+        }
+        else if (entity instanceof Modifier) {
+            return ((Modifier)entity).getKeyword().toString().hashCode();
+        }
+        else if (entity instanceof ModifierElement) {
+            Modifier.ModifierKeyword keyword = ((ModifierElement)entity).getKeyword();
+            return (keyword == null) ? NO_HASH : keyword.toString().hashCode();
+        }
+        else if (entity instanceof MethodDeclaration) {
+            return ((MethodDeclaration)entity).getName().getIdentifier().hashCode();
+        }
+        else if (entity instanceof SignatureEntity) {
+            return comparisonHash(((SignatureEntity)entity).getSignatureNode());
+        }
+        else if (entity instanceof BindingKeyValue) {
+            // equal to the declaration it's bound to, which is found by the key
+            IBinding binding = ((BindingKeyValue)entity).getOriginalBinding();
+            if (binding instanceof ITypeBinding) {
+                return comparisonHash(binding);
+            }
+            else if (binding instanceof IMethodBinding) {
+                return binding.getName().hashCode();
+            }
+            else {
+                return entity.hashCode();
+            }
+        }
+        else if (entity instanceof ASTNode) {
+            return StructuralHash.of((ASTNode)entity);
+        }
+        else if (entity instanceof List) {
+            return entity.hashCode();
+        }
+        else {
+            return OTHER_HASH;
+        }
+    }
+
+    // The hash of the given name without its qualifiers, or NO_HASH if the entity
+    // named has a type binding with a different name
+    private static int typeNameHash(String name, ITypeBinding binding) {
+        String unqualified = unqualifiedName(name);
+        if (binding != null
+            && !unqualifiedName(binding.getQualifiedName()).equals(unqualified))
+        {
+            return NO_HASH;
+        }
+        return unqualified.hashCode();
+    }
+
+    // The given type name without whitespace and with the qualifiers of the names
+    // in it taken out: e.g., "java.util.Map<java.lang.String, T>" becomes
+    // "Map<String,T>"
+    static String unqualifiedName(String typeName) {
+        if (typeName.indexOf('.') == -1 && typeName.indexOf(' ') == -1) {
+            return typeName;
+        }
+        StringBuilder result = new StringBuilder(typeName.length());
+        int nameStart = 0;
+        for (int i = 0; i < typeName.length(); ++i) {
+            char c = typeName.charAt(i);
+            if (c == '.') {
+                result.setLength(nameStart);
+            }
+            else if (Character.isWhitespace(c)) {
+                nameStart = result.length();
+            }
+            else {
+                result.append(c);
+                if (!Character.isJavaIdentifierPart(c)) {
+                    nameStart = result.length();
+                }
+            }
+        }
+        return result.toString();
+    }
+
     private static boolean compareBindingToASTNode(BindingKeyValue thiz, ASTNode that) {
         IBinding binding = thiz.getOriginalBinding();
         ASTNode foundAST = EntityDataBase.findASTNode(binding);
@@ -218,7 +356,7 @@ public abstract class Entity
         ITypeBinding tb1 = (ITypeBinding)EntityDataBase.resolveBindingNullOK(t1);
         ITypeBinding tb2 = (ITypeBinding)EntityDataBase.resolveBindingNullOK(t2);
         if (tb1 != null && tb2 != null) {
-            result = tb1.isEqualTo(tb2);
+            result = BindingKeyTable.sameBinding(tb1, tb2);
         }
         else {
             // in some cases, we are comparing against our own generated
@@ -234,14 +372,14 @@ public abstract class Entity
         IBinding tb1 = EntityDataBase.resolveBinding(thizName);
         Type thatType = (Type)that;
         ITypeBinding tb2 = (ITypeBinding)EntityDataBase.resolveBinding(thatType);
-        result = tb1.isEqualTo(tb2);
+        result = BindingKeyTable.sameBinding(tb1, tb2);
         return result;
     }
 
     private static boolean compareNameAndTypeBinding(Name name, ITypeBinding tb1) {
         ITypeBinding tb2 = name.resolveTypeBinding();
         if (tb2 != null) {
-            if (tb1.isEqualTo(tb2)) {
+            if (BindingKeyTable.sameBinding(tb1, tb2)) {
                 if (DEBUG) {
                     System.out.printf("%s is indeed equal to %s%n", name, tb1);
                 }
@@ -269,7 +407,7 @@ public abstract class Entity
     }
 
     private static boolean compareTypeBindings(ITypeBinding tb1, ITypeBinding tb2) {
-        if (tb1.isEqualTo(tb2)) {
+        if (BindingKeyTable.sameBinding(tb1, tb2)) {
             return true;
         }
         else {
@@ -9,8 +9,18 @@ import static edu.ucsd.arcum.util.Pair.newPair;
 import java.lang.reflect.Method;
 import java.util.*;
 import java.util.Map.Entry;
-
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
+import org.eclipse.core.runtime.CoreException;
+import org.eclipse.core.runtime.IProgressMonitor;
 import org.eclipse.jdt.core.dom.*;
 
 import com.google.common.collect.Lists;
@@ -19,6 +29,7 @@ import com.google.common.collect.ReferenceMap;
 import com.google.common.collect.Sets;
 
 import edu.ucsd.arcum.exceptions.ArcumError;
+import edu.ucsd.arcum.exceptions.SourceLocation;
 import edu.ucsd.arcum.interpreter.ast.ASTUtil;
 import edu.ucsd.arcum.interpreter.ast.FormalParameter;
 import edu.ucsd.arcum.interpreter.ast.TraitSignature;
@@ -26,6 +37,7 @@ import edu.ucsd.arcum.interpreter.ast.expressions.BuiltInFunction;
 import edu.ucsd.arcum.interpreter.ast.expressions.PatternExpression;
 import edu.ucsd.arcum.interpreter.fragments.*;
 import edu.ucsd.arcum.interpreter.parser.ASTVisitorAdaptor;
+import edu.ucsd.arcum.interpreter.parser.FragmentParser;
 import edu.ucsd.arcum.interpreter.satisfier.BindingMap;
 import edu.ucsd.arcum.interpreter.satisfier.BindingsSet;
 import edu.ucsd.arcum.interpreter.satisfier.MaskedLookup;
@@ -53,7 +65,8 @@ public class EntityDataBase
     private static final Map<Class<?>, EntityType> entityTypeTable;
 
     static {
-        entityTypeTable = Maps.newHashMap();
+        // written to by every population thread
+        entityTypeTable = Maps.newConcurrentHashMap();
 
         List<TraitSignature> entries = Lists.newArrayList();
         // hasField({Class, Type}, Field)
@@ -113,8 +126,53 @@ public class EntityDataBase
         EntityType.METHOD, EntityType.MODIFIERS, EntityType.PACKAGE,
         EntityType.SIGNATURE, EntityType.STATEMENT, EntityType.TYPE, };
 
+    // The number of threads used by populate, overridden with the system property
+    // edu.ucsd.arcum.populationThreads. With more than one thread each compilation
+    // unit is traversed into its own EntityShard as soon as the parser is done
+    // with its batch. This stays opt-in: the traversal resolves bindings, and JDT
+    // doesn't promise that the ASTs of one createASTs call can resolve them from
+    // several threads at once (their binding resolvers share the binding tables
+    // of the batch).
+    private static final int DEFAULT_POPULATION_THREADS = Integer.getInteger(
+        "edu.ucsd.arcum.populationThreads", 1);
+
+    // The most source files parsed in one batch when populating in parallel,
+    // overridden with the system property edu.ucsd.arcum.parseBatchSize. Smaller
+    // batches start the workers sooner, larger ones share each binding
+    // environment across more files.
+    private static final int PARALLEL_PARSE_BATCH_SIZE = Integer.getInteger(
+        "edu.ucsd.arcum.parseBatchSize", 100);
+
+    // The number of threads used to search for the entities that match a pattern,
+    // one per processor unless overridden with the system property
+    // edu.ucsd.arcum.searchThreads. Searches over fewer candidates than the
+    // threshold always stay on the calling thread.
+    private static final int DEFAULT_SEARCH_THREADS = Integer.getInteger(
+        "edu.ucsd.arcum.searchThreads", Runtime.getRuntime().availableProcessors());
+    private static final int PARALLEL_SEARCH_THRESHOLD = Integer.getInteger(
+        "edu.ucsd.arcum.parallelSearchThreshold", 2000);
+
+    // Shared by all databases, created when first needed with a thread for each
+    // processor, and shut down when the plug-in stops; a database's searchThreads
+    // only sets how many tasks a search is split into
+    private static ExecutorService searchExecutor;
+
+    // The projects that a database has been populated for
+    private static final Set<IProject> populatedProjects = Sets.newHashSet();
+
+    private final IProject project;
+    private final EntityRequirements requirements;
     private final ASTTraverseTable traverseTable;
     private final ProjectTraverser projectTraverser;
+    private int populationThreads;
+    private int searchThreads;
+    // incremented by the workers too, when populating in parallel
+    private final AtomicInteger numberOfTraversedUnits;
+
+    // The entities of each compilation unit, keyed by the path of its source
+    // file. The entity collections below are views over all of the shards, so
+    // that one unit can be replaced without copying any of the others.
+    private final Map<String, EntityShard> shards;
 
     private final Map<EntityType, Collection<ASTNode>> astNodeStorage;
     private final Map<EntityType, Collection<ITypeBinding>> typeBindingStorage;
@@ -122,18 +180,41 @@ public class EntityDataBase
     private final Map<ASTNode, ASTNode> desugaredToNearestNode;
     private final Map<ASTNode, ASTNode> pseudoParentTable;
 
-    private final MultiDictionary<BindingKeyValue, MethodInvocation> methodInvocations;
-    private final List<Expression> invocationsAndNames;
-    private final List<Assignment> assignments;
-    private final List<Pair<Expression, ? extends IBinding>> initializers;
-    private final List<Expression> argumentsPassed;
-    private final List<Expression> valuesReturned;
-    private final Map<String, AbstractTypeDeclaration> typeDefinitionKeyLookup;
-    private final Map<String, MethodDeclaration> methodBindingKeyLookup;
+    private final Collection<Entry<BindingKeyValue, List<MethodInvocation>>> methodInvocations;
+    private final Collection<Expression> invocationsAndNames;
+    private final Collection<Assignment> assignments;
+    // each initializer, with the binding key id of the variable it initializes
+    private final Collection<Pair<Expression, Integer>> initializers;
+    private final Collection<Expression> argumentsPassed;
+    private final Collection<Expression> valuesReturned;
+    // keyed by the ids of the BindingKeyTable
+    private final Map<Integer, AbstractTypeDeclaration> typeDefinitionKeyLookup;
+    private final Map<Integer, MethodDeclaration> methodBindingKeyLookup;
+
+    // The fragments built for the patterns matched against this database
+    private final ProgramFragmentCache fragmentCache;
+
+    // The relations of the built-in traits, each built the first time a concept
+    // refers to it and then shared by every OptionMatchTable, which only reads it
+    private final Map<String, TraitValue> builtInRelations;
 
     public EntityDataBase(IProject project) {
+        this(project, EntityRequirements.EVERYTHING);
+    }
+
+    // Only the entities and relations needed to meet the given requirements are
+    // stored; the collections of everything else are left empty
+    public EntityDataBase(IProject project, EntityRequirements requirements) {
+        this.project = project;
+        this.requirements = requirements;
         this.traverseTable = new ASTTraverseTable();
         this.projectTraverser = new ProjectTraverser(project, PROGRESS_MESSAGE);
+        this.populationThreads = DEFAULT_POPULATION_THREADS;
+        this.searchThreads = DEFAULT_SEARCH_THREADS;
+        this.numberOfTraversedUnits = new AtomicInteger();
+
+        this.shards = new LinkedHashMap<String, EntityShard>();
+        Collection<EntityShard> allShards = shards.values();
 
         this.astNodeStorage = newEntityTypeMap();
         this.typeBindingStorage = newEntityTypeMap();
@@ -141,24 +222,66 @@ public class EntityDataBase
         this.desugaredToNearestNode = new ReferenceMap<ASTNode, ASTNode>(WEAK, WEAK);
         this.pseudoParentTable = new ReferenceMap<ASTNode, ASTNode>(WEAK, WEAK);
 
-        this.methodInvocations = MultiDictionary.newInstance();
-        this.invocationsAndNames = Lists.newArrayList();
-        this.assignments = Lists.newArrayList();
-        this.initializers = Lists.newArrayList();
-        this.argumentsPassed = Lists.newArrayList();
-        this.valuesReturned = Lists.newArrayList();
+        this.methodInvocations = new ShardedCollection<Entry<BindingKeyValue, List<MethodInvocation>>>(
+            allShards) {
+            protected Collection<Entry<BindingKeyValue, List<MethodInvocation>>> part(
+                EntityShard shard)
+            {
+                return shard.methodInvocations.entrySet();
+            }
+        };
+        this.invocationsAndNames = new ShardedCollection<Expression>(allShards) {
+            protected Collection<Expression> part(EntityShard shard) {
+                return shard.invocationsAndNames;
+            }
+        };
+        this.assignments = new ShardedCollection<Assignment>(allShards) {
+            protected Collection<Assignment> part(EntityShard shard) {
+                return shard.assignments;
+            }
+        };
+        this.initializers = new ShardedCollection<Pair<Expression, Integer>>(allShards) {
+            protected Collection<Pair<Expression, Integer>> part(EntityShard shard) {
+                return shard.initializers;
+            }
+        };
+        this.argumentsPassed = new ShardedCollection<Expression>(allShards) {
+            protected Collection<Expression> part(EntityShard shard) {
+                return shard.argumentsPassed;
+            }
+        };
+        this.valuesReturned = new ShardedCollection<Expression>(allShards) {
+            protected Collection<Expression> part(EntityShard shard) {
+                return shard.valuesReturned;
+            }
+        };
 
         this.typeDefinitionKeyLookup = Maps.newHashMap();
         this.methodBindingKeyLookup = Maps.newHashMap();
+        this.fragmentCache = new ProgramFragmentCache();
+        this.builtInRelations = Maps.newHashMap();
 
         // We need to keep only one unique instance of each package found; we will
         // need to avoid the creation of packages for the moment, because renaming
         // packages or moving them is not a short to medium term term goal
 
-        for (EntityType type : TRACKED_TYPES) {
-            astNodeStorage.put(type, new ArrayList<ASTNode>());
-            typeBindingStorage.put(type, new ArrayList<ITypeBinding>());
-            synthesizedStorage.put(type, new ArrayList<ISynthesizedEntity>());
+        for (final EntityType type : TRACKED_TYPES) {
+            astNodeStorage.put(type, new ShardedCollection<ASTNode>(allShards) {
+                protected Collection<ASTNode> part(EntityShard shard) {
+                    return shard.astNodeStorage.get(type);
+                }
+            });
+            typeBindingStorage.put(type, new ShardedCollection<ITypeBinding>(allShards) {
+                protected Collection<ITypeBinding> part(EntityShard shard) {
+                    return shard.typeBindingStorage.get(type);
+                }
+            });
+            synthesizedStorage.put(type, new ShardedCollection<ISynthesizedEntity>(
+                allShards) {
+                protected Collection<ISynthesizedEntity> part(EntityShard shard) {
+                    return shard.synthesizedStorage.get(type);
+                }
+            });
         }
     }
 
@@ -166,20 +289,41 @@ public class EntityDataBase
         return new EnumMap<EntityType, T>(EntityType.class);
     }
 
+    public EntityRequirements getRequirements() {
+        return requirements;
+    }
+
+    public void setPopulationThreads(int populationThreads) {
+        this.populationThreads = Math.max(1, populationThreads);
+    }
+
+    public void setSearchThreads(int searchThreads) {
+        this.searchThreads = Math.max(1, searchThreads);
+    }
+
     public void populate() {
-        projectTraverser.runTraversal(new ProjectTraverser.ICompilationUnitVisitor() {
-            public @Override
-            void visitCompilationUnit(CompilationUnit compilationUnit) {
-                try {
-                    EntityDataBase.pushCurrentDataBase(EntityDataBase.this);
-                    IASTVisitor visitor = new EntityDataBaseVisitor();
-                    traverseTable.traverseAST(compilationUnit, visitor);
-                }
-                finally {
-                    EntityDataBase.popMostRecentDataBase();
+        populate(null);
+    }
+
+    // With a null monitor the traversal shows its own progress dialog (unless
+    // there is no workbench); otherwise it reports to the given monitor
+    public void populate(IProgressMonitor monitor) {
+        clearBindingKeys();
+        fragmentCache.clear();
+        FragmentParser.clearResolvedTypes();
+        clearBuiltInRelations();
+        if (populationThreads > 1) {
+            populateInParallel(monitor);
+        }
+        else {
+            runTraversal(new ProjectTraverser.ICompilationUnitVisitor() {
+                public @Override
+                void visitCompilationUnit(CompilationUnit compilationUnit) {
+                    String sourcePath = ProjectTraverser.getSourcePath(compilationUnit);
+                    addShard(sourcePath, traverseCompilationUnit(compilationUnit));
                 }
-            }
-        });
+            }, monitor);
+        }
 
         if (false && DEBUG) {
             System.out.printf("All types used:%n");
@@ -193,19 +337,289 @@ public class EntityDataBase
         }
     }
 
+    // The ids of the keys from an earlier traversal aren't needed once the project
+    // is traversed again from scratch, unless the database of another project
+    // still uses them: the BindingKeyTable is shared by all of the databases
+    private void clearBindingKeys() {
+        synchronized (populatedProjects) {
+            populatedProjects.add(project);
+            if (populatedProjects.size() == 1 && shards.isEmpty()) {
+                BindingKeyTable.clear();
+            }
+        }
+    }
+
+    // The project is parsed in batches, and the units of a batch are only handed
+    // to the workers once its call to createASTs has returned: the compiler's
+    // LookupEnvironment isn't thread-safe, so no binding can be resolved while
+    // it is still being used to parse. The next batch is parsed, with its own
+    // environment, while the workers traverse the last one. Merging the shards in
+    // the order the units were parsed (and not the order they finish in) keeps
+    // each collection's contents deterministic.
+    private void populateInParallel(IProgressMonitor monitor) {
+        final ExecutorService executor = Executors.newFixedThreadPool(populationThreads);
+        final List<Pair<String, Future<EntityShard>>> pending = Lists.newArrayList();
+        try {
+            projectTraverser.setBatchSize(PARALLEL_PARSE_BATCH_SIZE);
+            runTraversal(new ProjectTraverser.IBatchVisitor() {
+                private final List<CompilationUnit> batch = Lists.newArrayList();
+
+                public @Override
+                void visitCompilationUnit(CompilationUnit compilationUnit) {
+                    batch.add(compilationUnit);
+                }
+
+                public @Override
+                void batchParsed() {
+                    for (final CompilationUnit compilationUnit : batch) {
+                        String sourcePath;
+                        sourcePath = ProjectTraverser.getSourcePath(compilationUnit);
+                        Future<EntityShard> shard;
+                        shard = executor.submit(new Callable<EntityShard>() {
+                            public EntityShard call() {
+                                return traverseCompilationUnit(compilationUnit);
+                            }
+                        });
+                        pending.add(newPair(sourcePath, shard));
+                    }
+                    batch.clear();
+                }
+            }, monitor);
+
+            for (Pair<String, Future<EntityShard>> shard : pending) {
+                addShard(shard.getFirst(), getResult(shard.getSecond()));
+            }
+        }
+        finally {
+            projectTraverser.setBatchSize(Integer.MAX_VALUE);
+            executor.shutdownNow();
+        }
+    }
+
+    // Waits for the task, and rethrows what it threw
+    static <V> V getResult(Future<V> future) {
+        try {
+            return future.get();
+        }
+        catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        }
+        catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException)cause;
+            }
+            else if (cause instanceof Error) {
+                throw (Error)cause;
+            }
+            throw new RuntimeException(cause);
+        }
+    }
+
+    private void runTraversal(ProjectTraverser.ICompilationUnitVisitor visitor,
+        IProgressMonitor monitor)
+    {
+        if (monitor == null) {
+            projectTraverser.runTraversal(visitor);
+        }
+        else {
+            projectTraverser.runTraversal(visitor, monitor);
+        }
+    }
+
+    // The number of compilation units this database has traversed so far, which
+    // counts a unit again each time it is traversed again
+    public int getNumberOfTraversedUnits() {
+        return numberOfTraversedUnits.get();
+    }
+
+    // Safe to call from any thread: the current database is pushed onto the
+    // calling thread's own dynamic scope, and all results go into a new shard
+    private EntityShard traverseCompilationUnit(CompilationUnit compilationUnit) {
+        EntityShard shard = new EntityShard(TRACKED_TYPES);
+        traverseCompilationUnit(compilationUnit, shard);
+        shard.apiSignature = ApiSignature.of(compilationUnit);
+        shard.declaredTypeNames = ApiSignature.declaredTypeNames(compilationUnit);
+        shard.referencedNames = ApiSignature.referencedNames(compilationUnit);
+        numberOfTraversedUnits.incrementAndGet();
+        return shard;
+    }
+
+    private void traverseCompilationUnit(CompilationUnit compilationUnit,
+        EntityShard shard)
+    {
+        try {
+            EntityDataBase.pushCurrentDataBase(this);
+            IASTVisitor visitor = new EntityDataBaseVisitor(shard);
+            traverseTable.traverseAST(compilationUnit, visitor);
+            // Hashes every node of the unit bottom-up, now that desugaring has
+            // stopped changing its AST (which would make the hashes stale)
+            StructuralHash.of(compilationUnit);
+        }
+        finally {
+            EntityDataBase.popMostRecentDataBase();
+        }
+    }
+
+    // Re-traverses only the given source files: the entities previously found in
+    // each file are dropped, and the files that still exist are parsed and
+    // traversed again. The shards of all other files are left untouched, so the
+    // cost is proportional to the size of the changed files.
+    //
+    // This is only sound while no other unit depends on what changed. The changed
+    // files are parsed first, and their ApiSignatures compared with the ones of
+    // their last traversal before anything is traversed. When the API of a file
+    // that still exists changed, the units that depend on it could have stale
+    // bindings, and the whole project is parsed and traversed again instead. A
+    // file that was added or removed only causes that when another unit names
+    // one of its types. Callers have to check first that the database's
+    // requirements still cover the concepts. The monitor is used as in populate.
+    public void updateCompilationUnits(Collection<IFile> changedFiles,
+        IProgressMonitor monitor) throws CoreException
+    {
+        final Map<String, CompilationUnit> parsed = Maps.newLinkedHashMap();
+        projectTraverser.traverseFiles(changedFiles,
+            new ProjectTraverser.ICompilationUnitVisitor() {
+                public @Override
+                void visitCompilationUnit(CompilationUnit compilationUnit) {
+                    String sourcePath = ProjectTraverser.getSourcePath(compilationUnit);
+                    parsed.put(sourcePath, compilationUnit);
+                }
+            });
+
+        Set<String> changedPaths = Sets.newHashSet();
+        Set<String> addedOrRemovedTypes = Sets.newHashSet();
+        for (IFile file : changedFiles) {
+            String sourcePath = file.toString();
+            changedPaths.add(sourcePath);
+            EntityShard oldShard = shards.get(sourcePath);
+            CompilationUnit newUnit = parsed.get(sourcePath);
+            String oldSignature = (oldShard == null) ? "" : oldShard.apiSignature;
+            String newSignature = (newUnit == null) ? "" : ApiSignature.of(newUnit);
+            if (oldSignature.equals(newSignature)) {
+                continue;
+            }
+            if (oldShard != null && newUnit != null) {
+                if (DEBUG) {
+                    System.out.printf("The API of %s changed, repopulating%n", file);
+                }
+                repopulate(monitor);
+                return;
+            }
+            else if (oldShard != null) {
+                addedOrRemovedTypes.addAll(oldShard.declaredTypeNames);
+            }
+            else {
+                addedOrRemovedTypes.addAll(ApiSignature.declaredTypeNames(newUnit));
+            }
+        }
+        if (hasDependents(addedOrRemovedTypes, changedPaths)) {
+            if (DEBUG) {
+                System.out.printf("Types were added or removed, repopulating%n");
+            }
+            repopulate(monitor);
+            return;
+        }
+
+        for (String sourcePath : changedPaths) {
+            removeShard(sourcePath);
+        }
+        // the fragments may have types resolved against the old source
+        fragmentCache.clear();
+        clearBuiltInRelations();
+        FragmentParser.clearResolvedTypes();
+        for (Entry<String, CompilationUnit> unit : parsed.entrySet()) {
+            addShard(unit.getKey(), traverseCompilationUnit(unit.getValue()));
+        }
+    }
+
+    // True if a unit other than the changed ones names one of the given types
+    private boolean hasDependents(Set<String> typeNames, Set<String> changedPaths) {
+        if (typeNames.isEmpty()) {
+            return false;
+        }
+        for (Entry<String, EntityShard> entry : shards.entrySet()) {
+            if (!changedPaths.contains(entry.getKey())
+                && !Collections.disjoint(entry.getValue().referencedNames, typeNames))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Drops every shard, along with the cached ASTs whose bindings may refer to
+    // the old declarations, and traverses the whole project again
+    private void repopulate(IProgressMonitor monitor) {
+        shards.clear();
+        typeDefinitionKeyLookup.clear();
+        methodBindingKeyLookup.clear();
+        declarationElementLookup.clear();
+        ProjectTraverser.getASTCache().clear();
+        populate(monitor);
+    }
+
+    private void addShard(String sourcePath, EntityShard shard) {
+        removeShard(sourcePath);
+        shards.put(sourcePath, shard);
+        registerKeys(shard);
+    }
+
+    private void registerKeys(EntityShard shard) {
+        typeDefinitionKeyLookup.putAll(shard.typeDefinitionKeyLookup);
+        methodBindingKeyLookup.putAll(shard.methodBindingKeyLookup);
+        declarationElementLookup.putAll(shard.declarationElementLookup);
+    }
+
+    private void removeShard(String sourcePath) {
+        EntityShard shard = shards.remove(sourcePath);
+        if (shard != null) {
+            removeOwnedEntries(typeDefinitionKeyLookup, shard.typeDefinitionKeyLookup);
+            removeOwnedEntries(methodBindingKeyLookup, shard.methodBindingKeyLookup);
+            removeOwnedEntries(declarationElementLookup, shard.declarationElementLookup);
+        }
+    }
+
+    private AbstractTypeDeclaration lookupTypeDeclaration(int id) {
+        return typeDefinitionKeyLookup.get(id);
+    }
+
+    private MethodDeclaration lookupMethodDeclaration(int id) {
+        return methodBindingKeyLookup.get(id);
+    }
+
+    // Removes the entries of the lookup that still map to what the shard put
+    // there, and not to an entity that another shard has since registered
+    private static <K, V> void removeOwnedEntries(Map<K, V> lookup, Map<K, V> owned) {
+        for (Entry<K, V> entry : owned.entrySet()) {
+            if (lookup.get(entry.getKey()) == entry.getValue()) {
+                lookup.remove(entry.getKey());
+            }
+        }
+    }
+
+    // The program fragments of the pattern, built the first time the pattern is
+    // evaluated with bindings that give it this shape
+    public List<ProgramFragment> getProgramFragments(PatternExpression patternExpr,
+        EntityType type, IEntityLookup lookup, TypeLookupTable types,
+        boolean isMatchingMode)
+    {
+        return fragmentCache.getFragments(patternExpr, type, lookup, types,
+            isMatchingMode);
+    }
+
     public BindingsSet immeditateMatchingBinding(PatternExpression patternExpr,
         EntityType type, BindingMap in, IEntityLookup lookup, TypeLookupTable types,
         Object entity)
     {
         try {
             EntityDataBase.pushCurrentDataBase(this);
-            final ProgramFragmentFactory builder;
             final List<ProgramFragment> fragments;
             Set<String> vars = patternExpr.getArcumVariableReferences();
 
             IEntityLookup masked = new MaskedLookup(lookup, vars);
-            builder = new ProgramFragmentFactory(patternExpr, type, masked, types, true);
-            fragments = builder.getAbstractProgramFragments();
+            fragments = getProgramFragments(patternExpr, type, masked, types, true);
             BindingsSet result = BindingsSet.newEmptySet();
             eachFragment: for (ProgramFragment fragment : fragments) {
                 BindingMap theta = fragment.matches(entity);
@@ -249,11 +663,9 @@ public class EntityDataBase
     {
         try {
             EntityDataBase.pushCurrentDataBase(this);
-            final ProgramFragmentFactory builder;
             final List<ProgramFragment> fragments;
 
-            builder = new ProgramFragmentFactory(patternExpr, type, lookup, types, true);
-            fragments = builder.getAbstractProgramFragments();
+            fragments = getProgramFragments(patternExpr, type, lookup, types, true);
 
             BindingsSet literalMatches = immediateLiteralMatches(type, in, lookup,
                 fragments);
@@ -275,7 +687,7 @@ public class EntityDataBase
                 return null;
             }
             else {
-                Collection<ASTNode> astNodes = astNodeStorage.get(type);
+                Collection<ASTNode> astNodes = getCandidateNodes(type, fragments);
                 return entitySearch(astNodes, fragments, in);
             }
         }
@@ -284,6 +696,27 @@ public class EntityDataBase
         }
     }
 
+    // About how many entities a pattern of the given type is matched against,
+    // for ordering the clauses of a conjunction
+    public int estimateCandidates(EntityType type) {
+        Collection<?> candidates;
+        if (type == null) {
+            candidates = null;
+        }
+        else if (EntityType.TYPE.isAssignableFrom(type)) {
+            candidates = typeBindingStorage.get(type);
+        }
+        else if (EntityType.SIGNATURE.isAssignableFrom(type)
+            || EntityType.MODIFIERS.isAssignableFrom(type))
+        {
+            candidates = synthesizedStorage.get(type);
+        }
+        else {
+            candidates = astNodeStorage.get(type);
+        }
+        return (candidates == null) ? Integer.MAX_VALUE : candidates.size();
+    }
+
     // EXAMPLE: These two push/pop methods are examples of a @StackWinding idiom,
     // where each block that the push is called must have a finally at the end that
     // calls the unwind operation. Naturally, this limits how you can use the API,
@@ -335,17 +768,141 @@ public class EntityDataBase
         return null;
     }
 
+    // The nodes of the given type that the fragments could match: when every
+    // fragment pins an identifier below its root, only the nodes found by the
+    // fragments' probes are tried; otherwise, when every fragment fixes the
+    // class of the node at its root, only the nodes of those classes are tried,
+    // instead of every node of the type
+    private Collection<ASTNode> getCandidateNodes(final EntityType type,
+        List<ProgramFragment> fragments)
+    {
+        final List<PathProbe> probes = compileProbes(fragments);
+        if (probes != null) {
+            return new ShardedCollection<ASTNode>(shards.values()) {
+                protected Collection<ASTNode> part(EntityShard shard) {
+                    return shard.getASTNodes(type, probes);
+                }
+            };
+        }
+
+        final Set<Class<?>> rootClasses = Sets.newHashSet();
+        for (ProgramFragment fragment : fragments) {
+            Class<?> rootClass = fragment.getRootNodeClass();
+            if (rootClass == null) {
+                return astNodeStorage.get(type);
+            }
+            rootClasses.add(rootClass);
+        }
+        if (rootClasses.isEmpty()) {
+            return astNodeStorage.get(type);
+        }
+        return new ShardedCollection<ASTNode>(shards.values()) {
+            protected Collection<ASTNode> part(EntityShard shard) {
+                return shard.getASTNodes(type, rootClasses);
+            }
+        };
+    }
+
+    // Returns null unless every fragment can be compiled to a probe
+    private static List<PathProbe> compileProbes(List<ProgramFragment> fragments) {
+        if (fragments.isEmpty()) {
+            return null;
+        }
+        List<PathProbe> result = Lists.newArrayList();
+        for (ProgramFragment fragment : fragments) {
+            PathProbe probe = PathProbe.compile(fragment);
+            if (probe == null) {
+                return null;
+            }
+            result.add(probe);
+        }
+        if (DEBUG) {
+            System.out.printf("Probing for %s%n", result);
+        }
+        return result;
+    }
+
     private <T> BindingsSet entitySearch(Collection<T> entities,
         Collection<ProgramFragment> fragments, BindingMap in)
     {
-        final BindingsSet result = BindingsSet.newEmptySet();
+        if (searchThreads > 1 && entities.size() >= PARALLEL_SEARCH_THRESHOLD) {
+            // copied so that the candidates can be split into chunks
+            List<T> candidates = Lists.newArrayList(entities);
+            return parallelEntitySearch(candidates, fragments, in);
+        }
+        return sequentialEntitySearch(entities, fragments, in);
+    }
+
+    // A worker's dynamic scopes start out empty, so each task pushes this database
+    // (and the current source location, for error messages) before it matches
+    // anything
+    private <T> BindingsSet parallelEntitySearch(List<T> candidates,
+        final Collection<ProgramFragment> fragments, final BindingMap in)
+    {
+        final SourceLocation location = SourceLocation.resolveSourceLocation();
+        ChunkedSearch<T> search = new ChunkedSearch<T>() {
+            protected List<BindingMap> search(List<T> chunk) {
+                try {
+                    EntityDataBase.pushCurrentDataBase(EntityDataBase.this);
+                    SourceLocation.pushLocation(location);
+                    return findMatches(chunk, fragments, in);
+                }
+                finally {
+                    SourceLocation.popLocation();
+                    EntityDataBase.popMostRecentDataBase();
+                }
+            }
+        };
+        return search.run(candidates, searchThreads * 4, getSearchExecutor());
+    }
+
+    // Stops the search threads; a later parallel search starts new ones
+    public static synchronized void shutdownSearchExecutor() {
+        if (searchExecutor != null) {
+            searchExecutor.shutdownNow();
+            searchExecutor = null;
+        }
+    }
+
+    private static synchronized ExecutorService getSearchExecutor() {
+        if (searchExecutor == null) {
+            int numThreads = Runtime.getRuntime().availableProcessors();
+            searchExecutor = Executors.newFixedThreadPool(numThreads,
+                new ThreadFactory() {
+                    public Thread newThread(Runnable runnable) {
+                        Thread thread = new Thread(runnable, "Arcum entity search");
+                        // don't keep the workbench, or a headless run, alive
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+        }
+        return searchExecutor;
+    }
+
+    private <T> BindingsSet sequentialEntitySearch(Collection<T> entities,
+        Collection<ProgramFragment> fragments, BindingMap in)
+    {
+        BindingsSet result = BindingsSet.newEmptySet();
+        for (BindingMap theta : findMatches(entities, fragments, in)) {
+            result.addEntry(theta);
+        }
+        return result;
+    }
+
+    // The first match of each entity, merged with in, in the order of the
+    // entities; the maps aren't deduplicated yet
+    private <T> List<BindingMap> findMatches(Collection<T> entities,
+        Collection<ProgramFragment> fragments, BindingMap in)
+    {
+        List<BindingMap> result = Lists.newArrayList();
         entitySearch: for (T entity : entities) {
             for (ProgramFragment fragment : fragments) {
                 BindingMap theta = fragment.matches(entity);
                 if (theta != null) {
                     BindingMap merge = theta.consistentMerge(in);
                     if (merge != null) {
-                        result.addEntry(merge);
+                        result.add(merge);
                         continue entitySearch;
                     }
                 }
@@ -356,8 +913,8 @@ public class EntityDataBase
 
     // May return null
     public AbstractTypeDeclaration lookupTypeDeclaration(ITypeBinding givenBinding) {
-        String key = givenBinding.getKey();
-        AbstractTypeDeclaration typeDecl = typeDefinitionKeyLookup.get(key);
+        int id = BindingKeyTable.getId(givenBinding);
+        AbstractTypeDeclaration typeDecl = lookupTypeDeclaration(id);
         return typeDecl;
     }
 
@@ -384,6 +941,12 @@ public class EntityDataBase
     //   int[] a;
     private class EntityDataBaseVisitor extends ASTVisitorAdaptor
     {
+        private final EntityShard shard;
+
+        public EntityDataBaseVisitor(EntityShard shard) {
+            this.shard = shard;
+        }
+
         @Override
         public boolean visitASTNode(ASTNode node, StructuralPropertyDescriptor edge) {
             if (node == null) {
@@ -448,7 +1011,7 @@ public class EntityDataBase
         private boolean handleTypeDeclaration(AbstractTypeDeclaration atd) {
             // TYPE
             ITypeBinding binding = atd.resolveBinding();
-            typeDefinitionKeyLookup.put(binding.getKey(), atd);
+            shard.typeDefinitionKeyLookup.put(BindingKeyTable.getId(binding), atd);
             storeASTNode(EntityType.TYPE, atd);
             storeTypeBinding(binding);
             return true;
@@ -458,7 +1021,7 @@ public class EntityDataBase
         private boolean handleVariableDeclaration(VariableDeclaration node) {
             // DECLARATION_ELEMENT (part 1: formals)
             int dims = node.getExtraDimensions();
-            if (dims == 0) {
+            if (dims == 0 || !requirements.needsDeclarationElements()) {
                 // Just visit initializer expression, if present
                 final Expression initializer;
                 if (node instanceof SingleVariableDeclaration) {
@@ -510,7 +1073,7 @@ public class EntityDataBase
                 associateNodeToPseudoParent(annotation, node);
             }
 
-            associateBindingToDeclarationElement(node.resolveBinding(), node);
+            shard.associateBindingToDeclarationElement(node.resolveBinding(), node);
             storeASTNode(EntityType.DECLARATION_ELEMENT, node);
             handleVariableInitialization(node);
             return false;
@@ -527,7 +1090,7 @@ public class EntityDataBase
                 handleAnnotation(annotation);
             }
 
-            boolean needToDesugar = true;
+            boolean needToDesugar = requirements.needsDeclarationElements();
             if (fragments.size() == 1) {
                 needToDesugar = false;
                 for (Annotation annotation : annotations) {
@@ -535,7 +1098,8 @@ public class EntityDataBase
                 }
                 VariableDeclarationFragment frag = (VariableDeclarationFragment)fragments
                     .get(0);
-                associateBindingToDeclarationElement(frag.resolveBinding(), varDeclStmt);
+                shard.associateBindingToDeclarationElement(frag.resolveBinding(),
+                    varDeclStmt);
                 storeASTNode(EntityType.DECLARATION_ELEMENT, varDeclStmt);
                 handleVariableInitialization(varDeclStmt);
             }
@@ -559,7 +1123,8 @@ public class EntityDataBase
                     List modifiers = ASTNode.copySubtrees(ast, varDeclStmt.modifiers());
                     newStmt.modifiers().addAll(modifiers);
 
-                    associateBindingToDeclarationElement(frag.resolveBinding(), newStmt);
+                    shard.associateBindingToDeclarationElement(frag.resolveBinding(),
+                        newStmt);
                     ASTUtil.recordUpdatedNode(varDeclStmt, newStmt);
                     storeDesugaredASTNode(EntityType.DECLARATION_ELEMENT, newStmt, frag);
                     handleVariableInitialization(frag);
@@ -605,15 +1170,22 @@ public class EntityDataBase
             for (Object obj : arguments) {
                 Expression argument = (Expression)obj;
                 reentrantVisit(argument);
-                argumentsPassed.add(argument);
+                if (requirements.usesTrait("copiedTo")) {
+                    shard.argumentsPassed.add(argument);
+                }
             }
 
             // MONDAY: Also need to check ClassInstanceCreation, SuperMethodInvocation,
             // and potentially other ways to invoke methods
-            IMethodBinding binding = invocation.resolveMethodBinding();
-            BindingKeyValue key = BindingKeyValue.newInstance(EntityType.METHOD, binding);
-            methodInvocations.addDefinition(key, invocation);
-            invocationsAndNames.add(invocation);
+            if (requirements.needsMethodInvocations()) {
+                IMethodBinding binding = invocation.resolveMethodBinding();
+                BindingKeyValue key = BindingKeyValue.newInstance(EntityType.METHOD,
+                    binding);
+                shard.methodInvocations.addDefinition(key, invocation);
+            }
+            if (requirements.usesTrait("declaredBy")) {
+                shard.invocationsAndNames.add(invocation);
+            }
             return false;
         }
 
@@ -621,17 +1193,19 @@ public class EntityDataBase
             // EXPR
             storeASTNode(EntityType.EXPR, node);
 
-            if (node instanceof Assignment) {
+            if (node instanceof Assignment && requirements.usesTrait("copiedTo")) {
                 Assignment assignment = (Assignment)node;
-                assignments.add(assignment);
+                shard.assignments.add(assignment);
             }
 
             if (node instanceof Name) {
                 Name name = (Name)node;
                 IBinding binding = resolveBindingNullOK(name);
                 if (binding != null) {
-                    if (binding.getKind() == IBinding.VARIABLE) {
-                        invocationsAndNames.add(name);
+                    if (binding.getKind() == IBinding.VARIABLE
+                        && requirements.usesTrait("declaredBy"))
+                    {
+                        shard.invocationsAndNames.add(name);
                     }
                 }
                 else {
@@ -667,7 +1241,9 @@ public class EntityDataBase
                 FieldAccess fieldAccess = (FieldAccess)node;
                 Expression expression = fieldAccess.getExpression();
                 reentrantVisit(expression);
-                invocationsAndNames.add(fieldAccess);
+                if (requirements.usesTrait("declaredBy")) {
+                    shard.invocationsAndNames.add(fieldAccess);
+                }
                 return false;
             }
 
@@ -680,12 +1256,13 @@ public class EntityDataBase
             List fragments = fieldDecl.fragments();
             Type baseType = fieldDecl.getType();
 
-            boolean needToDesugar = true;
+            boolean needToDesugar = requirements.needsDeclarationElements();
             if (fragments.size() == 1) {
                 needToDesugar = false;
                 VariableDeclarationFragment frag = (VariableDeclarationFragment)fragments
                     .get(0);
-                associateBindingToDeclarationElement(frag.resolveBinding(), fieldDecl);
+                shard.associateBindingToDeclarationElement(frag.resolveBinding(),
+                    fieldDecl);
                 storeASTNode(EntityType.DECLARATION_ELEMENT, fieldDecl);
                 storeASTNode(EntityType.FIELD, fieldDecl);
                 handleVariableInitialization(fieldDecl);
@@ -710,7 +1287,7 @@ public class EntityDataBase
                     List modifiers = ASTNode.copySubtrees(ast, fieldDecl.modifiers());
                     newFieldDecl.modifiers().addAll(modifiers);
 
-                    associateBindingToDeclarationElement(frag.resolveBinding(),
+                    shard.associateBindingToDeclarationElement(frag.resolveBinding(),
                         newFieldDecl);
                     ASTUtil.recordUpdatedNode(fieldDecl, newFieldDecl);
                     storeDesugaredASTNode(EntityType.DECLARATION_ELEMENT, newFieldDecl,
@@ -732,14 +1309,17 @@ public class EntityDataBase
         private boolean handleMethod(MethodDeclaration methodDecl) {
             // TODO: Desugar extra array dimensions
             storeASTNode(EntityType.METHOD, methodDecl);
-            storeSignatureEntity(EntityType.SIGNATURE, new SignatureEntity(methodDecl));
+            if (requirements.isTracked(EntityType.SIGNATURE)) {
+                storeSignatureEntity(EntityType.SIGNATURE, new SignatureEntity(methodDecl));
+            }
 
             IMethodBinding methodBinding = methodDecl.resolveBinding();
-            methodBindingKeyLookup.put(methodBinding.getKey(), methodDecl);
+            shard.methodBindingKeyLookup.put(BindingKeyTable.getId(methodBinding),
+                methodDecl);
 
             Type returnType = methodDecl.getReturnType2();
             if (returnType != null) {
-                associateBindingToDeclarationElement(methodDecl.resolveBinding(),
+                shard.associateBindingToDeclarationElement(methodDecl.resolveBinding(),
                     returnType);
                 storeASTNode(EntityType.DECLARATION_ELEMENT, returnType);
                 for (Annotation annotation : ASTUtil.getAnnotations(methodDecl)) {
@@ -780,8 +1360,8 @@ public class EntityDataBase
             if (node instanceof ReturnStatement) {
                 ReturnStatement returnStmt = (ReturnStatement)node;
                 Expression expression = returnStmt.getExpression();
-                if (expression != null) {
-                    valuesReturned.add(expression);
+                if (expression != null && requirements.usesTrait("copiedTo")) {
+                    shard.valuesReturned.add(expression);
                 }
             }
 
@@ -799,7 +1379,17 @@ public class EntityDataBase
         @Override
         public boolean beforeVisitEdge(ASTNode parent, StructuralPropertyDescriptor edge)
         {
-            if (Entity.isModifiersEdge(edge)) {
+            if (Entity.isModifiersEdge(edge) && !requirements.needsModifiers()) {
+                // only the annotations are of interest
+                List modsAndAnnots = (List)parent.getStructuralProperty(edge);
+                for (Object modOrAnnot : modsAndAnnots) {
+                    if (modOrAnnot instanceof Annotation) {
+                        visitASTNode((Annotation)modOrAnnot, edge);
+                    }
+                }
+                return false;
+            }
+            else if (Entity.isModifiersEdge(edge)) {
                 List modsAndAnnots = (List)parent.getStructuralProperty(edge);
                 EntityList accessSpecifier = EntityList.newModifiersList();
                 EntityList modifiersList = EntityList.newModifiersList();
@@ -901,15 +1491,67 @@ public class EntityDataBase
 //            return null;
 //        }
 
+        private void addInitializer(Expression initializer, IBinding declarationBinding) {
+            int id = getDeclarationId(declarationBinding);
+            shard.initializers.add(newPair(initializer, id));
+        }
+
+        private void handleVariableInitialization(ASTNode node) {
+            if (!requirements.usesTrait("copiedTo")) {
+                return;
+            }
+            if (node instanceof SingleVariableDeclaration) {
+                SingleVariableDeclaration decl = (SingleVariableDeclaration)node;
+                Expression initializer = decl.getInitializer();
+                if (initializer != null) {
+                    addInitializer(initializer, decl.resolveBinding());
+                }
+            }
+            else if (node instanceof VariableDeclarationFragment) {
+                VariableDeclarationFragment fragment = (VariableDeclarationFragment)node;
+                Expression initializer = fragment.getInitializer();
+                if (initializer != null) {
+                    addInitializer(initializer, fragment.resolveBinding());
+                }
+            }
+            else if (node instanceof VariableDeclarationStatement) {
+                VariableDeclarationStatement varDeclStmt = (VariableDeclarationStatement)node;
+                List fragments = varDeclStmt.fragments();
+                if (fragments.size() != 1) {
+                    ArcumError.fatalError("Internal error found in handleVariableInitialization");
+                }
+                VariableDeclarationFragment frag = (VariableDeclarationFragment)fragments.get(0);
+                handleVariableInitialization(frag);
+            }
+            else if (node instanceof FieldDeclaration) {
+                FieldDeclaration fieldDecl = (FieldDeclaration)node;
+                List fragments = fieldDecl.fragments();
+                if (fragments.size() != 1) {
+                    ArcumError.fatalError("Internal error found in handleVariableInitialization");
+                }
+                VariableDeclarationFragment frag = (VariableDeclarationFragment)fragments.get(0);
+                handleVariableInitialization(frag);
+            }
+            else {
+                ArcumError.fatalError("Unhandled case: %s", ASTUtil.getDebugString(node));
+            }
+        }
+
         // Note: This may be called multiple times for the same ASTNode but using
         // different types. The most specific type should be used last.
+        // The type of the node's class is recorded even when the entities of
+        // that type aren't kept, because getMostSpecificEntityType relies on it
         private void storeASTNode(EntityType type, ASTNode node) {
             entityTypeTable.put(node.getClass(), type);
-            astNodeStorage.get(type).add(node);
+            if (requirements.isTracked(type)) {
+                shard.addASTNode(type, node);
+            }
         }
 
         private void storeTypeBinding(ITypeBinding typeBinding) {
-            typeBindingStorage.get(EntityType.TYPE).add(typeBinding);
+            if (requirements.isTracked(EntityType.TYPE)) {
+                shard.typeBindingStorage.get(EntityType.TYPE).add(typeBinding);
+            }
         }
 
         private void storeTypeBindingFromName(SimpleName name) {
@@ -931,79 +1573,112 @@ public class EntityDataBase
         }
 
         private void storeModifiersList(EntityType type, EntityList modifiersList) {
-            synthesizedStorage.get(type).add(modifiersList);
+            if (requirements.isTracked(type)) {
+                shard.synthesizedStorage.get(type).add(modifiersList);
+            }
         }
 
         private void storeSignatureEntity(EntityType type, SignatureEntity signatureEntity)
         {
-            synthesizedStorage.get(type).add(signatureEntity);
+            shard.synthesizedStorage.get(type).add(signatureEntity);
         }
     }
 
-    // inserts into the given table all trait values for the built-in predicates:
-    // hasField, hasMethod
-    public void insertBuiltInTraitValues(OptionMatchTable table) {
-        try {
-            pushCurrentDataBase(this);
-
-            insertOwnerRelation(table, EntityType.FIELD, "hasField", astNodeStorage);
-            insertOwnerRelation(table, EntityType.METHOD, "hasMethod", astNodeStorage);
-            insertDirectParentOfRelation(table, EntityType.ANNOTATION, "hasAnnotation",
-                astNodeStorage);
+    // Returns the relation of the given built-in trait (e.g., hasField), building
+    // it the first time it's asked for; the relation must not be changed
+    public synchronized TraitValue getBuiltInTraitValue(String traitName) {
+        TraitValue result = builtInRelations.get(traitName);
+        if (result == null) {
+            TraitSignature type = BUILT_IN_TRAIT_TYPES.get(traitName);
+            if (type == null) {
+                ArcumError.fatalError("Internal error: %s is not a built-in trait",
+                    traitName);
+            }
+            result = new TraitValue(traitName, type, false, true);
+            try {
+                pushCurrentDataBase(this);
+                insertBuiltInTraitValues(result);
+            }
+            finally {
+                popMostRecentDataBase();
+            }
+            builtInRelations.put(traitName, result);
+        }
+        return result;
+    }
 
-            insertInvokesRelation(table, methodInvocations);
-            insertHasInvocationTargetRelation(table, methodInvocations);
-            insertDeclaredByRelation(table);
-            insertCopiedToRelation(table);
+    private synchronized void clearBuiltInRelations() {
+        builtInRelations.clear();
+    }
 
+    // inserts into the given relation all tuples of its built-in trait
+    private void insertBuiltInTraitValues(TraitValue relation) {
+        String traitName = relation.getTraitName();
+        if (traitName.equals("hasField")) {
+            insertOwnerRelation(relation, EntityType.FIELD, astNodeStorage);
+        }
+        else if (traitName.equals("hasMethod")) {
+            insertOwnerRelation(relation, EntityType.METHOD, astNodeStorage);
+        }
+        else if (traitName.equals("hasAnnotation")) {
+            insertDirectParentOfRelation(relation, EntityType.ANNOTATION,
+                astNodeStorage);
+        }
+        else if (traitName.equals("invokes")) {
+            insertInvokesRelation(relation, methodInvocations);
+        }
+        else if (traitName.equals("hasInvocationTarget")) {
+            insertHasInvocationTargetRelation(relation, methodInvocations);
+        }
+        else if (traitName.equals("declaredBy")) {
+            insertDeclaredByRelation(relation);
+        }
+        else if (traitName.equals("copiedTo")) {
+            insertCopiedToRelation(relation);
+        }
+        else if (traitName.equals("superclassOf")) {
             // MACNEIL : If we consider all types in the program, and not all types
             // defined in the project, we should think of a different strategy, one which
             // may require a full search of the jars on the path for all matching types
-            insertSuperclassRelation(table, astNodeStorage.get(EntityType.TYPE));
-        }
-        finally {
-            popMostRecentDataBase();
+            insertSuperclassRelation(relation, astNodeStorage.get(EntityType.TYPE));
         }
     }
 
-    private <T> void insertOwnerRelation(OptionMatchTable table, EntityType entityType,
-        String traitName, Map<EntityType, Collection<T>> lookupTable)
+    private <T> void insertOwnerRelation(TraitValue relation, EntityType entityType,
+        Map<EntityType, Collection<T>> lookupTable)
     {
         final TraitSignature type;
         final List<String> names;
         final Collection<T> nodes;
 
-        type = BUILT_IN_TRAIT_TYPES.get(traitName);
+        type = relation.getTraitType();
         names = Lists.transform(type.getFormals(), FormalParameter.getIdentifier);
         nodes = lookupTable.get(entityType);
 
-        table.addBuiltInTrait(type);
         for (T node : nodes) {
             ITypeBinding definingType = findDefiningType(node);
             Map<String, Object> values = values(names, definingType, node);
             EntityTuple instance = new EntityTuple(type, values, null);
-            table.addTraitInstance(traitName, instance);
+            relation.addTuple(instance);
         }
     }
 
-    private <T extends ASTNode> void insertDirectParentOfRelation(OptionMatchTable table,
-        EntityType entityType, String traitName,
-        Map<EntityType, Collection<T>> lookupTable)
+    private <T extends ASTNode> void insertDirectParentOfRelation(TraitValue relation,
+        EntityType entityType, Map<EntityType, Collection<T>> lookupTable)
     {
         final TraitSignature type;
         final List<String> names;
         final Collection<T> nodes;
 
-        type = BUILT_IN_TRAIT_TYPES.get(traitName);
+        type = relation.getTraitType();
         names = Lists.transform(type.getFormals(), FormalParameter.getIdentifier);
         nodes = lookupTable.get(entityType);
 
-        table.addBuiltInTrait(type);
         for (T node : nodes) {
             ASTNode parent = lookupPseudoParent(node);
             Map<String, Object> values = values(names, parent, node);
             EntityTuple instance = new EntityTuple(type, values, null);
-            table.addTraitInstance(traitName, instance);
+            relation.addTuple(instance);
 
             if (DEBUG) {
                 System.out.printf("hasAnnotation info: %s on %s%n", node, StringUtil
@@ -1013,25 +1688,24 @@ public class EntityDataBase
     }
 
     private @ReadWriteAccess(@MethodGroup(type = EntityDataBase.class, names = {
-        "associateBindingToDeclarationElement", "lookupDeclarationElement" }))
-    final Map<String, Object> declarationElementLookup = Maps.newHashMap();
+        "registerKeys", "removeShard", "lookupDeclarationElement" }))
+    final Map<Integer, Object> declarationElementLookup = Maps.newHashMap();
 
-    private void associateBindingToDeclarationElement(IBinding binding, @Union("Entity")
-    Object declarationElement)
-    {
-        String key = binding.getKey();
-        declarationElementLookup.put(key, declarationElement);
+    private Object lookupDeclarationElement(IBinding binding) {
+        return lookupDeclarationElement(getDeclarationId(binding));
     }
 
-    private Object lookupDeclarationElement(IBinding binding) {
+    private Object lookupDeclarationElement(int id) {
+        return declarationElementLookup.get(id);
+    }
+
+    private static int getDeclarationId(IBinding binding) {
         if (binding instanceof IVariableBinding) {
             // work with the binding in the generic type instead of an instance of
             // the generic type
             binding = ((IVariableBinding)binding).getVariableDeclaration();
         }
-        String key = binding.getKey();
-        Object result = declarationElementLookup.get(key);
-        return result;
+        return BindingKeyTable.getId(binding);
     }
 
     private void associateNodeToPseudoParent(ASTNode node, ASTNode parent) {
@@ -1050,22 +1724,19 @@ public class EntityDataBase
     // TODO: Need to worry about method overriding too: The methodKey used should
     // actually be a set of method keys: That method itself, and all methods that
     // override it.
-    private void insertInvokesRelation(OptionMatchTable table,
-        MultiDictionary<BindingKeyValue, MethodInvocation> methodInvocations)
+    private void insertInvokesRelation(TraitValue relation,
+        Collection<Entry<BindingKeyValue, List<MethodInvocation>>> methodInvocations)
     {
-        final String INVOKES = "invokes";
-
-        TraitSignature type = BUILT_IN_TRAIT_TYPES.get(INVOKES);
+        TraitSignature type = relation.getTraitType();
         List<String> names = Lists.transform(type.getFormals(), getIdentifier);
 
-        table.addBuiltInTrait(type);
         for (Entry<BindingKeyValue, List<MethodInvocation>> keyedDefinitions : methodInvocations)
         {
             BindingKeyValue methodKey = keyedDefinitions.getKey();
             for (MethodInvocation expr : keyedDefinitions.getValue()) {
                 Map<String, Object> values = values(names, expr, methodKey);
                 EntityTuple instance = new EntityTuple(type, values, null);
-                table.addTraitInstance(INVOKES, instance);
+                relation.addTuple(instance);
 
                 IMethodBinding caller = ASTUtil.getDefiningMethod(expr);
                 if (caller != null) {
@@ -1073,21 +1744,18 @@ public class EntityDataBase
                         EntityType.METHOD, caller);
                     values = values(names, callerKey, methodKey);
                     instance = new EntityTuple(type, values, null);
-                    table.addTraitInstance(INVOKES, instance);
+                    relation.addTuple(instance);
                 }
             }
         }
     }
 
-    private void insertHasInvocationTargetRelation(OptionMatchTable table,
-        MultiDictionary<BindingKeyValue, MethodInvocation> methodInvocations)
+    private void insertHasInvocationTargetRelation(TraitValue relation,
+        Collection<Entry<BindingKeyValue, List<MethodInvocation>>> methodInvocations)
     {
-        final String HAS_INVOCATION_TARGET = "hasInvocationTarget";
-
-        TraitSignature type = BUILT_IN_TRAIT_TYPES.get(HAS_INVOCATION_TARGET);
+        TraitSignature type = relation.getTraitType();
         List<String> names = Lists.transform(type.getFormals(), getIdentifier);
 
-        table.addBuiltInTrait(type);
         for (Entry<BindingKeyValue, List<MethodInvocation>> keyedDefinitions : methodInvocations)
         {
             for (MethodInvocation invocation : keyedDefinitions.getValue()) {
@@ -1097,7 +1765,7 @@ public class EntityDataBase
                 }
                 Map<String, Object> values = values(names, invocation, target);
                 EntityTuple instance = new EntityTuple(type, values, null);
-                table.addTraitInstance(HAS_INVOCATION_TARGET, instance);
+                relation.addTuple(instance);
             }
         }
     }
@@ -1107,37 +1775,32 @@ public class EntityDataBase
     // TODO: implement ArrayAccess as a declaration reference, very similar to
     // accessing a field. However, fields can have annotations, while the type of
     // an array cannot.
-    private void insertDeclaredByRelation(OptionMatchTable table) {
-        final String DECLARED_BY = "declaredBy";
-
-        TraitSignature type = BUILT_IN_TRAIT_TYPES.get(DECLARED_BY);
+    private void insertDeclaredByRelation(TraitValue relation) {
+        TraitSignature type = relation.getTraitType();
         List<String> names = Lists.transform(type.getFormals(), getIdentifier);
 
-        table.addBuiltInTrait(type);
         for (Expression reference : invocationsAndNames) {
             IBinding declarationBinding = getDeclarationBinding(reference);
             Object declarationElement = lookupDeclarationElement(declarationBinding);
             if (declarationElement != null) {
                 Map<String, Object> values = values(names, reference, declarationElement);
                 EntityTuple instance = new EntityTuple(type, values, null);
-                table.addTraitInstance(DECLARED_BY, instance);
+                relation.addTuple(instance);
             }
         }
     }
 
-    private void insertCopiedToRelation(OptionMatchTable table) {
-        final String COPIED_TO = "copiedTo";
-
-        TraitSignature type = BUILT_IN_TRAIT_TYPES.get(COPIED_TO);
+    private void insertCopiedToRelation(TraitValue relation) {
+        TraitSignature type = relation.getTraitType();
         List<String> names = Lists.transform(type.getFormals(), getIdentifier);
 
         List<Map<String, Object>> listOfValues = Lists.newArrayList();
 
-        table.addBuiltInTrait(type);
         for (Expression valueCopied : argumentsPassed) {
             MethodInvocation methodCall = (MethodInvocation)valueCopied.getParent();
-            String methodBindingKey = methodCall.resolveMethodBinding().getKey();
-            MethodDeclaration methodDecl = methodBindingKeyLookup.get(methodBindingKey);
+            IMethodBinding methodBinding = methodCall.resolveMethodBinding();
+            int methodBindingId = BindingKeyTable.getId(methodBinding);
+            MethodDeclaration methodDecl = lookupMethodDeclaration(methodBindingId);
 //            if (valueCopied.toString().equals("stmtLookup")) {
 //                System.out.printf("copiedTo %s %s%n", valueCopied, methodBindingKey);
 //                for (String str : methodBindingKeyLookup.keySet()) {
@@ -1159,10 +1822,9 @@ public class EntityDataBase
                 listOfValues.add(values(names, valueCopied, declElement));
             }
         }
-        for (Pair<Expression, ? extends IBinding> initializer : initializers) {
+        for (Pair<Expression, Integer> initializer : initializers) {
             Expression valueCopied = initializer.getFirst();
-            IBinding declarationBinding = initializer.getSecond();
-            Object declElement = lookupDeclarationElement(declarationBinding);
+            Object declElement = lookupDeclarationElement(initializer.getSecond());
             listOfValues.add(values(names, valueCopied, declElement));
         }
         for (Expression valueCopied : valuesReturned) {
@@ -1173,7 +1835,7 @@ public class EntityDataBase
 
         for (Map<String, Object> values : listOfValues) {
             EntityTuple instance = new EntityTuple(type, values, null);
-            table.addTraitInstance(COPIED_TO, instance);
+            relation.addTuple(instance);
         }
     }
 
@@ -1242,54 +1904,15 @@ public class EntityDataBase
         return declarationBinding;
     }
 
-    private void handleVariableInitialization(ASTNode node) {
-        if (node instanceof SingleVariableDeclaration) {
-            SingleVariableDeclaration decl = (SingleVariableDeclaration)node;
-            Expression initializer = decl.getInitializer();
-            if (initializer != null) {
-                initializers.add(newPair(initializer, decl.resolveBinding()));
-            }
-        }
-        else if (node instanceof VariableDeclarationFragment) {
-            VariableDeclarationFragment fragment = (VariableDeclarationFragment)node;
-            Expression initializer = fragment.getInitializer();
-            if (initializer != null) {
-                initializers.add(newPair(initializer, fragment.resolveBinding()));
-            }
-        }
-        else if (node instanceof VariableDeclarationStatement) {
-            VariableDeclarationStatement varDeclStmt = (VariableDeclarationStatement)node;
-            List fragments = varDeclStmt.fragments();
-            if (fragments.size() != 1) {
-                ArcumError.fatalError("Internal error found in handleVariableInitialization");
-            }
-            VariableDeclarationFragment frag = (VariableDeclarationFragment)fragments.get(0);
-            handleVariableInitialization(frag);
-        }
-        else if (node instanceof FieldDeclaration) {
-            FieldDeclaration fieldDecl = (FieldDeclaration)node;
-            List fragments = fieldDecl.fragments();
-            if (fragments.size() != 1) {
-                ArcumError.fatalError("Internal error found in handleVariableInitialization");
-            }
-            VariableDeclarationFragment frag = (VariableDeclarationFragment)fragments.get(0);
-            handleVariableInitialization(frag);
-        }
-        else {
-            ArcumError.fatalError("Unhandled case: %s", ASTUtil.getDebugString(node));
-        }
-    }
-
-    private void insertSuperclassRelation(OptionMatchTable table,
+    private void insertSuperclassRelation(TraitValue relation,
         Collection<ASTNode> classes)
     {
         final TraitSignature type;
         final List<String> names;
 
-        type = BUILT_IN_TRAIT_TYPES.get("superclassOf");
+        type = relation.getTraitType();
         names = Lists.transform(type.getFormals(), FormalParameter.getIdentifier);
 
-        table.addBuiltInTrait(type);
         for (ASTNode clazz : classes) {
             ITypeBinding nextParent = lookupTypeBinding((AbstractTypeDeclaration)clazz);
             for (;;) {
@@ -1300,7 +1923,7 @@ public class EntityDataBase
                 values.put(names.get(0), superclass);
                 values.put(names.get(1), clazz);
                 EntityTuple instance = new EntityTuple(type, values, null);
-                table.addTraitInstance("superclassOf", instance);
+                relation.addTuple(instance);
                 nextParent = superclass;
             }
         }
@@ -1329,12 +1952,12 @@ public class EntityDataBase
 
     public static ASTNode findASTNode(IBinding binding) {
         EntityDataBase edb = currentEDB.peek();
-        String key = binding.getKey();
-        MethodDeclaration methodDecl = edb.methodBindingKeyLookup.get(key);
+        int id = BindingKeyTable.getId(binding);
+        MethodDeclaration methodDecl = edb.lookupMethodDeclaration(id);
         if (methodDecl != null) {
             return methodDecl;
         }
-        AbstractTypeDeclaration typeDecl = edb.typeDefinitionKeyLookup.get(key);
+        AbstractTypeDeclaration typeDecl = edb.lookupTypeDeclaration(id);
         if (typeDecl != null) {
             return typeDecl;
         }
@@ -0,0 +1,153 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import static edu.ucsd.arcum.interpreter.query.EntityDataBase.BUILT_IN_TRAIT_TYPES;
+
+import java.util.*;
+
+import edu.ucsd.arcum.interpreter.ast.FormalParameter;
+import edu.ucsd.arcum.interpreter.ast.TraitSignature;
+import edu.ucsd.arcum.interpreter.ast.expressions.*;
+import edu.ucsd.arcum.interpreter.parser.ArcumStructureParser.EmbeddedExpression;
+import edu.ucsd.arcum.util.DynamicScope;
+
+// The parts of the Java code that the concepts of one symbol table can ask
+// about: the entity types their variables range over, and the built-in traits
+// they use. An EntityDataBase built for a set of requirements only stores the
+// entities and relations that can be reached, so the size of the index follows
+// what the concepts need instead of the whole Java language.
+//
+// The requirements are gathered while the symbol table is type checked: every
+// constraint expression that gets checked reports itself, together with the
+// trait signatures in its scope, through noteTypeChecked.
+public class EntityRequirements
+{
+    // Requirements that keep everything, for when the concepts aren't known
+    public static final EntityRequirements EVERYTHING = new EntityRequirements(EnumSet
+        .allOf(EntityType.class), BUILT_IN_TRAIT_TYPES.keySet());
+
+    private static final DynamicScope<Collector> currentCollector = DynamicScope
+        .newInstance();
+
+    private final Set<EntityType> types;
+    private final Set<String> builtInTraits;
+
+    private EntityRequirements(Set<EntityType> types, Set<String> builtInTraits) {
+        this.types = EnumSet.copyOf(types);
+        this.builtInTraits = new TreeSet<String>(builtInTraits);
+    }
+
+    public boolean isTracked(EntityType type) {
+        return types.contains(type);
+    }
+
+    public boolean usesTrait(String traitName) {
+        return builtInTraits.contains(traitName);
+    }
+
+    // True if a database built for these requirements can also answer all the
+    // queries of the other requirements
+    public boolean covers(EntityRequirements that) {
+        return this.types.containsAll(that.types)
+            && this.builtInTraits.containsAll(that.builtInTraits);
+    }
+
+    // Declaration elements are also the targets of the declaredBy and copiedTo
+    // relations, and the parents of their annotations, so multiple declarations
+    // have to be desugared for those too
+    public boolean needsDeclarationElements() {
+        return isTracked(EntityType.DECLARATION_ELEMENT) || isTracked(EntityType.FIELD)
+            || usesTrait("declaredBy") || usesTrait("copiedTo")
+            || usesTrait("hasAnnotation");
+    }
+
+    public boolean needsModifiers() {
+        return isTracked(EntityType.MODIFIERS) || isTracked(EntityType.ACCESS_SPECIFIER);
+    }
+
+    public boolean needsMethodInvocations() {
+        return usesTrait("invokes") || usesTrait("hasInvocationTarget");
+    }
+
+    @Override public String toString() {
+        return String.format("types %s, built-in traits %s", types, builtInTraits);
+    }
+
+    // EXAMPLE: Another use of the @StackWinding idiom: each beginCollecting
+    // must be matched by an endCollecting in a finally block.
+    public static void beginCollecting() {
+        currentCollector.push(new Collector());
+    }
+
+    public static EntityRequirements endCollecting() {
+        Collector collector = currentCollector.peek();
+        currentCollector.pop();
+        return new EntityRequirements(collector.types, collector.builtInTraits);
+    }
+
+    // Called for each constraint expression as it is type checked; does nothing
+    // unless the requirements are being collected
+    public static void noteTypeChecked(ConstraintExpression expression,
+        List<TraitSignature> signatures)
+    {
+        if (!currentCollector.isEmpty()) {
+            Collector collector = currentCollector.peek();
+            for (TraitSignature signature : signatures) {
+                collector.addFormals(signature.getFormals());
+            }
+            for (String name : expression.findAllTraitDependencies()) {
+                collector.addBuiltInTrait(name);
+            }
+            collector.visit(expression);
+        }
+    }
+
+    private static class Collector implements ISubExpressionVisitor
+    {
+        private final Set<EntityType> types = EnumSet.noneOf(EntityType.class);
+        private final Set<String> builtInTraits = new HashSet<String>();
+
+        public void visit(ConstraintExpression expression) {
+            if (expression instanceof ExistentialQuantifier) {
+                addFormals(((ExistentialQuantifier)expression).getBoundVars());
+            }
+            else if (expression instanceof UniversalQuantifier) {
+                addFormals(((UniversalQuantifier)expression).getBoundVars());
+            }
+            else if (expression instanceof PatternExpression) {
+                PatternExpression patternExpr = (PatternExpression)expression;
+                for (EmbeddedExpression embed : patternExpr.getEmbeddedExpressions()) {
+                    addFormal(embed.getBoundVar());
+                }
+            }
+            else if (expression instanceof FunctionalExpression) {
+                FunctionalExpression functionalExpr = (FunctionalExpression)expression;
+                addBuiltInTrait(functionalExpr.getFunction().getName());
+                List<EntityType> parameterTypes = functionalExpr.getParameterTypes();
+                if (parameterTypes != null) {
+                    types.addAll(parameterTypes);
+                }
+            }
+            expression.visitSubExpressions(this);
+        }
+
+        private void addBuiltInTrait(String name) {
+            TraitSignature signature = BUILT_IN_TRAIT_TYPES.get(name);
+            if (signature != null && builtInTraits.add(name)) {
+                addFormals(signature.getFormals());
+            }
+        }
+
+        private void addFormals(List<FormalParameter> formals) {
+            for (FormalParameter formal : formals) {
+                addFormal(formal);
+            }
+        }
+
+        private void addFormal(FormalParameter formal) {
+            types.add(formal.getType());
+            if (formal.isSubTrait()) {
+                addFormals(formal.getTraitArguments());
+            }
+        }
+    }
+}
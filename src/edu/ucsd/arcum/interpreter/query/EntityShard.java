@@ -0,0 +1,162 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import java.util.*;
+
+import org.eclipse.jdt.core.dom.*;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import edu.ucsd.arcum.interpreter.fragments.ISynthesizedEntity;
+import edu.ucsd.arcum.interpreter.fragments.Union;
+import edu.ucsd.arcum.util.MultiDictionary;
+import edu.ucsd.arcum.util.Pair;
+
+// The entities found by traversing one compilation unit. Each shard is filled
+// by exactly one EntityDataBaseVisitor, so shards can be populated on separate
+// threads without any locking; the EntityDataBase then adds the shards to its
+// tables in a fixed order, which keeps their contents independent of how the
+// work was scheduled.
+class EntityShard
+{
+    final Map<EntityType, Collection<ASTNode>> astNodeStorage;
+    // the same nodes as astNodeStorage, grouped by their concrete class
+    private final Map<EntityType, Map<Class<?>, List<ASTNode>>> astNodesByClass;
+    // built the first time a PathProbe is used on the nodes of the type
+    private final Map<EntityType, PathIndex> pathIndexes;
+    final Map<EntityType, Collection<ITypeBinding>> typeBindingStorage;
+    final Map<EntityType, Collection<ISynthesizedEntity>> synthesizedStorage;
+
+    final MultiDictionary<BindingKeyValue, MethodInvocation> methodInvocations;
+    final List<Expression> invocationsAndNames;
+    final List<Assignment> assignments;
+    // the initializer expressions, with the id of the declaration's binding
+    final List<Pair<Expression, Integer>> initializers;
+    final List<Expression> argumentsPassed;
+    final List<Expression> valuesReturned;
+    // these three are keyed by the ids of the BindingKeyTable
+    final Map<Integer, AbstractTypeDeclaration> typeDefinitionKeyLookup;
+    final Map<Integer, MethodDeclaration> methodBindingKeyLookup;
+    final Map<Integer, Object> declarationElementLookup;
+    // the ApiSignature of the unit, the names of the types it declares and the
+    // identifiers it uses, set once the unit has been traversed
+    String apiSignature;
+    Set<String> declaredTypeNames;
+    Set<String> referencedNames;
+
+    EntityShard(EntityType[] trackedTypes) {
+        this.astNodeStorage = new EnumMap<EntityType, Collection<ASTNode>>(
+            EntityType.class);
+        this.astNodesByClass = new EnumMap<EntityType, Map<Class<?>, List<ASTNode>>>(
+            EntityType.class);
+        this.pathIndexes = new EnumMap<EntityType, PathIndex>(EntityType.class);
+        this.typeBindingStorage = new EnumMap<EntityType, Collection<ITypeBinding>>(
+            EntityType.class);
+        this.synthesizedStorage = new EnumMap<EntityType, Collection<ISynthesizedEntity>>(
+            EntityType.class);
+
+        this.methodInvocations = MultiDictionary.newInstance();
+        this.invocationsAndNames = Lists.newArrayList();
+        this.assignments = Lists.newArrayList();
+        this.initializers = Lists.newArrayList();
+        this.argumentsPassed = Lists.newArrayList();
+        this.valuesReturned = Lists.newArrayList();
+
+        this.typeDefinitionKeyLookup = Maps.newHashMap();
+        this.methodBindingKeyLookup = Maps.newHashMap();
+        this.declarationElementLookup = Maps.newHashMap();
+        this.apiSignature = "";
+        this.declaredTypeNames = Collections.emptySet();
+        this.referencedNames = Collections.emptySet();
+
+        for (EntityType type : trackedTypes) {
+            astNodeStorage.put(type, new ArrayList<ASTNode>());
+            astNodesByClass.put(type, new HashMap<Class<?>, List<ASTNode>>());
+            typeBindingStorage.put(type, new ArrayList<ITypeBinding>());
+            synthesizedStorage.put(type, new ArrayList<ISynthesizedEntity>());
+        }
+    }
+
+    void addASTNode(EntityType type, ASTNode node) {
+        astNodeStorage.get(type).add(node);
+        Map<Class<?>, List<ASTNode>> byClass = astNodesByClass.get(type);
+        List<ASTNode> nodes = byClass.get(node.getClass());
+        if (nodes == null) {
+            nodes = Lists.newArrayList();
+            byClass.put(node.getClass(), nodes);
+        }
+        nodes.add(node);
+    }
+
+    // The nodes of the given type that are an instance of one of the given
+    // classes, in the order they were added
+    Collection<ASTNode> getASTNodes(EntityType type, Set<Class<?>> rootClasses) {
+        Map<Class<?>, List<ASTNode>> byClass = astNodesByClass.get(type);
+        List<ASTNode> onlyMatch = null;
+        int numMatches = 0;
+        for (Map.Entry<Class<?>, List<ASTNode>> entry : byClass.entrySet()) {
+            if (isInstanceOfAny(entry.getKey(), rootClasses)) {
+                onlyMatch = entry.getValue();
+                ++numMatches;
+            }
+        }
+        if (numMatches <= 1) {
+            return (onlyMatch == null) ? Collections.<ASTNode> emptyList() : onlyMatch;
+        }
+        // Nodes of several classes: keep them in their original order
+        List<ASTNode> result = Lists.newArrayList();
+        for (ASTNode node : astNodeStorage.get(type)) {
+            if (isInstanceOfAny(node.getClass(), rootClasses)) {
+                result.add(node);
+            }
+        }
+        return result;
+    }
+
+    // The nodes of the given type found by any of the probes, in the order they
+    // were added
+    Collection<ASTNode> getASTNodes(EntityType type, List<PathProbe> probes) {
+        PathIndex index = getPathIndex(type);
+        if (probes.size() == 1) {
+            return probes.get(0).lookup(index);
+        }
+        // ASTNodes have identity semantics
+        Set<ASTNode> found = Sets.newHashSet();
+        for (PathProbe probe : probes) {
+            found.addAll(probe.lookup(index));
+        }
+        List<ASTNode> result = Lists.newArrayList();
+        for (ASTNode node : astNodeStorage.get(type)) {
+            if (found.contains(node)) {
+                result.add(node);
+            }
+        }
+        return result;
+    }
+
+    private synchronized PathIndex getPathIndex(EntityType type) {
+        PathIndex result = pathIndexes.get(type);
+        if (result == null) {
+            result = PathIndex.newInstance(astNodeStorage.get(type));
+            pathIndexes.put(type, result);
+        }
+        return result;
+    }
+
+    private static boolean isInstanceOfAny(Class<?> nodeClass, Set<Class<?>> classes) {
+        for (Class<?> clazz : classes) {
+            if (clazz.isAssignableFrom(nodeClass)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    void associateBindingToDeclarationElement(IBinding binding, @Union("Entity")
+    Object declarationElement)
+    {
+        int id = BindingKeyTable.getId(binding);
+        declarationElementLookup.put(id, declarationElement);
+    }
+}
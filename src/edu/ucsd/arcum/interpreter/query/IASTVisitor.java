@@ -38,4 +38,10 @@ public interface IASTVisitor
     // Visit a terminal node, e.g. a String, which is not an ASTNode. These
     // simple properties have no children, so there is no return type.
     void visitSimpleProperty(Object property, StructuralPropertyDescriptor edge);
+
+    // Return false if simple properties are of no interest: then the edges of
+    // simple properties are skipped altogether, and neither beforeVisitEdge,
+    // visitSimpleProperty, nor afterVisitEdge is called for them. Asked once,
+    // at the start of each traversal.
+    boolean visitsSimpleProperties();
 }
\ No newline at end of file
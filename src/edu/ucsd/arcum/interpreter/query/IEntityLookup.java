@@ -20,6 +20,9 @@ public interface IEntityLookup
     FormalParameter findResolvedSingleton(String variableName);
     
     FragmentParser newParser(boolean matchingMode);
+
+    // The imports that the parsers from newParser are given
+    String getImports();
     
     AbstractTypeDeclaration lookupTypeDeclaration(ITypeBinding givenBinding);
     
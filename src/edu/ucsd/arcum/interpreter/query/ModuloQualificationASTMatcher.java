@@ -43,7 +43,7 @@ public class ModuloQualificationASTMatcher extends ASTMatcher
             ITypeBinding tb1 = (ITypeBinding)EntityDataBase.resolveBindingNullOK(t1);
             ITypeBinding tb2 = (ITypeBinding)EntityDataBase.resolveBindingNullOK(t2);
             if (tb1 != null && tb2 != null) {
-                result = tb1.isEqualTo(tb2);
+                result = BindingKeyTable.sameBinding(tb1, tb2);
             }
             else if (tb1 != null && t2 instanceof SimpleType) {
                 result = compareTypeBindingToType(tb1, (SimpleType)t2);
@@ -37,7 +37,13 @@ public class OptionMatchTable implements IEntityLookup
     private SourceLocation location;
     private final Map<String, TraitValue> singletons = new HashMap<String, TraitValue>();
     private final Map<String, TraitValue> traits = new HashMap<String, TraitValue>();
+    // the relations of the built-in traits looked up so far; they are owned, and
+    // shared with other tables, by the builtInTraitSource
     private final Map<String, TraitValue> builtInTraits = new HashMap<String, TraitValue>();
+    private EntityDataBase builtInTraitSource = null;
+
+    // while not null, the traits named here are looked up as just these tuples
+    private Map<String, TraitValue> traitDeltas = null;
 
     private Set<FormalParameter> resolvedVariables = null;
     private boolean needsUpdate = false;
@@ -121,8 +127,9 @@ public class OptionMatchTable implements IEntityLookup
         }
     }
 
+    // the relations are only built when a concept refers to one of them
     private void importBuiltInTraitPredicates(EntityDataBase entityDataBase) {
-        entityDataBase.insertBuiltInTraitValues(this);
+        this.builtInTraitSource = entityDataBase;
     }
 
     private void matchAllArgumentTraits(EntityDataBase edb) throws CoreException {
@@ -214,18 +221,15 @@ public class OptionMatchTable implements IEntityLookup
         traits.put(name, set);
     }
 
-    public void addBuiltInTrait(TraitSignature type) {
-        String name = type.getName();
-        TraitValue set = new TraitValue(name, type, false, true);
-        builtInTraits.put(name, set);
+    // Makes the given traits stand for the given tuples, instead of all of
+    // their tuples, until this is called again with null
+    public void setTraitDeltas(Map<String, TraitValue> deltas) {
+        this.traitDeltas = deltas;
     }
 
     // Returns true if this set did not already contain the specified element
     public boolean addTraitInstance(String name, EntityTuple tuple) {
         TraitValue set = traits.get(name);
-        if (set == null) {
-            set = builtInTraits.get(name);
-        }
         return set.addTuple(tuple);
     }
 
@@ -348,16 +352,22 @@ public class OptionMatchTable implements IEntityLookup
             }
         }
         // and then return if a trait matches
+        if (traitDeltas != null && traitDeltas.containsKey(reference)) {
+            return traitDeltas.get(reference);
+        }
         for (TraitValue traitValue : traits.values()) {
             if (reference.equals(traitValue.getTraitName())) {
                 return traitValue;
             }
         }
         // finally, try the built-in traits
-        for (TraitValue traitValue : builtInTraits.values()) {
-            if (reference.equals(traitValue.getTraitName())) {
-                return traitValue;
+        if (builtInTraitSource != null && EntityDataBase.isBuiltInTrait(reference)) {
+            TraitValue traitValue = builtInTraits.get(reference);
+            if (traitValue == null) {
+                traitValue = builtInTraitSource.getBuiltInTraitValue(reference);
+                builtInTraits.put(reference, traitValue);
             }
+            return traitValue;
         }
 
         return null;
@@ -471,6 +481,10 @@ public class OptionMatchTable implements IEntityLookup
         return parser;
     }
 
+    @Override public String getImports() {
+        return option.getImports();
+    }
+
     // Apply the require clause checks. Returns true if the checks pass.
     // (If false is returned then there is a user-error and processing should
     // stop.)
@@ -626,7 +640,9 @@ public class OptionMatchTable implements IEntityLookup
 
     public Set<String> getTraitsRealized() {
         Set<String> result = Sets.newHashSet();
-        result.addAll(builtInTraits.keySet());
+        if (builtInTraitSource != null) {
+            result.addAll(EntityDataBase.BUILT_IN_TRAIT_TYPES.keySet());
+        }
         for (TraitValue singletonTupleSet : singletons.values()) {
             result.addAll(singletonTupleSet.getNamesOfDeclaredFormals());
         }
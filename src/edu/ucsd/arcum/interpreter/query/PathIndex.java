@@ -0,0 +1,111 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.ChildPropertyDescriptor;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.StructuralPropertyDescriptor;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+// Maps a path from a node to one of its identifiers to the nodes with that
+// identifier at the end of the path. A path is a single structural property:
+// either a simple property with a String value (e.g., the token of a number
+// literal) or a child property that always holds a SimpleName (e.g., the name
+// of a method invocation). Since each descriptor belongs to just one node
+// class, the descriptor also stands for the class of the node.
+//
+// E.g., the key (MethodInvocation.NAME_PROPERTY, "get") leads to every
+// invocation of a method named get. A PathProbe compiled from a pattern looks
+// up the candidates for the pattern with one such key.
+class PathIndex
+{
+    private final Map<PathKey, List<ASTNode>> index;
+
+    public static PathIndex newInstance(Collection<ASTNode> nodes) {
+        PathIndex result = new PathIndex();
+        for (ASTNode node : nodes) {
+            result.add(node);
+        }
+        return result;
+    }
+
+    private PathIndex() {
+        this.index = Maps.newHashMap();
+    }
+
+    private void add(ASTNode node) {
+        for (StructuralPropertyDescriptor spd : ASTTraverseTable.getProperties(node)) {
+            String identifier = identifierAt(node, spd);
+            if (identifier != null) {
+                PathKey key = new PathKey(spd, identifier);
+                List<ASTNode> nodes = index.get(key);
+                if (nodes == null) {
+                    nodes = Lists.newArrayList();
+                    index.put(key, nodes);
+                }
+                nodes.add(node);
+            }
+        }
+    }
+
+    // The nodes, in the order they were given, whose identifier at the end of
+    // the path matches
+    public List<ASTNode> lookup(StructuralPropertyDescriptor spd, String identifier) {
+        List<ASTNode> result = index.get(new PathKey(spd, identifier));
+        if (result == null) {
+            return Collections.emptyList();
+        }
+        return result;
+    }
+
+    // Is the property one that ends a path of the index?
+    public static boolean isIndexed(StructuralPropertyDescriptor spd) {
+        if (spd.isChildProperty()) {
+            return ((ChildPropertyDescriptor)spd).getChildType() == SimpleName.class;
+        }
+        return spd.isSimpleProperty();
+    }
+
+    private static String identifierAt(ASTNode node, StructuralPropertyDescriptor spd) {
+        if (!isIndexed(spd)) {
+            return null;
+        }
+        Object property = node.getStructuralProperty(spd);
+        if (property instanceof SimpleName) {
+            return ((SimpleName)property).getIdentifier();
+        }
+        else if (property instanceof String) {
+            return (String)property;
+        }
+        return null;
+    }
+
+    private static class PathKey
+    {
+        private final StructuralPropertyDescriptor spd;
+        private final String identifier;
+
+        public PathKey(StructuralPropertyDescriptor spd, String identifier) {
+            this.spd = spd;
+            this.identifier = identifier;
+        }
+
+        @Override public int hashCode() {
+            return 31 * System.identityHashCode(spd) + identifier.hashCode();
+        }
+
+        @Override public boolean equals(Object obj) {
+            if (!(obj instanceof PathKey)) {
+                return false;
+            }
+            PathKey that = (PathKey)obj;
+            return this.spd == that.spd && this.identifier.equals(that.identifier);
+        }
+    }
+}
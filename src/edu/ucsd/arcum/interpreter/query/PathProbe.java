@@ -0,0 +1,75 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.SimpleName;
+import org.eclipse.jdt.core.dom.StructuralPropertyDescriptor;
+
+import edu.ucsd.arcum.interpreter.fragments.PartialNode;
+import edu.ucsd.arcum.interpreter.fragments.ProgramFragment;
+import edu.ucsd.arcum.interpreter.fragments.ResolvedEntity;
+import edu.ucsd.arcum.interpreter.fragments.SimplePropertyLeaf;
+
+// A lookup into a PathIndex, compiled from a program fragment that pins one of
+// the identifiers just below its root: every node the fragment matches is
+// found by the probe (but not every node found is a match, the fragment still
+// has to be tried on each).
+//
+// E.g., the fragment of [`target.get()] is a MethodInvocation whose name is
+// resolved to "get", so its probe only finds the invocations of methods named
+// get, instead of every expression in the project.
+class PathProbe
+{
+    private final StructuralPropertyDescriptor spd;
+    private final String identifier;
+
+    // Returns null if the fragment doesn't pin an identifier the index has
+    public static PathProbe compile(ProgramFragment fragment) {
+        if (!(fragment instanceof PartialNode)) {
+            return null;
+        }
+        PartialNode partialNode = (PartialNode)fragment;
+        for (StructuralPropertyDescriptor spd : partialNode.getEdges()) {
+            if (PathIndex.isIndexed(spd)) {
+                String identifier = pinnedIdentifier(partialNode.lookupEdge(spd));
+                if (identifier != null) {
+                    return new PathProbe(spd, identifier);
+                }
+            }
+        }
+        return null;
+    }
+
+    private PathProbe(StructuralPropertyDescriptor spd, String identifier) {
+        this.spd = spd;
+        this.identifier = identifier;
+    }
+
+    public List<ASTNode> lookup(PathIndex index) {
+        return index.lookup(spd, identifier);
+    }
+
+    // Only fragments that can't match a node with another identifier pin it
+    private static String pinnedIdentifier(ProgramFragment branch) {
+        Object value = null;
+        if (branch instanceof SimplePropertyLeaf) {
+            value = ((SimplePropertyLeaf)branch).getValue();
+        }
+        else if (branch instanceof ResolvedEntity) {
+            value = ((ResolvedEntity)branch).getValue();
+        }
+        if (value instanceof SimpleName) {
+            return ((SimpleName)value).getIdentifier();
+        }
+        else if (value instanceof String) {
+            return (String)value;
+        }
+        return null;
+    }
+
+    @Override public String toString() {
+        return String.format("%s.%s=%s", spd.getNodeClass().getSimpleName(), spd
+            .getId(), identifier);
+    }
+}
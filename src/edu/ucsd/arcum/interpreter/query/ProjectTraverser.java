@@ -3,8 +3,9 @@ package edu.ucsd.arcum.interpreter.query;
 import static edu.ucsd.arcum.ArcumPlugin.DEBUG;
 
 import java.lang.reflect.InvocationTargetException;
-import java.util.HashMap;
-import java.util.Map;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
 import org.eclipse.core.resources.IFile;
 import org.eclipse.core.resources.IProject;
@@ -13,13 +14,16 @@ import org.eclipse.core.resources.IResourceProxy;
 import org.eclipse.core.resources.IResourceProxyVisitor;
 import org.eclipse.core.runtime.CoreException;
 import org.eclipse.core.runtime.IProgressMonitor;
+import org.eclipse.core.runtime.NullProgressMonitor;
 import org.eclipse.core.runtime.content.IContentDescription;
 import org.eclipse.core.runtime.content.IContentType;
 import org.eclipse.jdt.core.ICompilationUnit;
+import org.eclipse.jdt.core.IJavaElement;
 import org.eclipse.jdt.core.IJavaProject;
 import org.eclipse.jdt.core.JavaCore;
 import org.eclipse.jdt.core.dom.AST;
 import org.eclipse.jdt.core.dom.ASTParser;
+import org.eclipse.jdt.core.dom.ASTRequestor;
 import org.eclipse.jdt.core.dom.CompilationUnit;
 import org.eclipse.jface.dialogs.ProgressMonitorDialog;
 import org.eclipse.jface.operation.IRunnableWithProgress;
@@ -36,9 +40,27 @@ public class ProjectTraverser
         void visitCompilationUnit(CompilationUnit compilationUnit);
     }
 
-    private static Map<String, CompilationUnit> cachedParsedASTs;
+    // A visitor that is also told each time the parser is done with the units
+    // visited since the last call: from then on, nothing but the visitor resolves
+    // their bindings
+    public interface IBatchVisitor extends ICompilationUnitVisitor
+    {
+        void batchParsed();
+    }
+
+    // The byte budget for ASTs that are held strongly, overridden with the system
+    // property edu.ucsd.arcum.astCacheBytes. ASTs past the budget are only held
+    // softly.
+    private static final long DEFAULT_AST_CACHE_BYTES = Long.getLong(
+        "edu.ucsd.arcum.astCacheBytes", 256L * 1024 * 1024);
+
+    private static final ASTCache cachedParsedASTs;
     static {
-        cachedParsedASTs = new HashMap<String, CompilationUnit>();
+        cachedParsedASTs = new ASTCache(DEFAULT_AST_CACHE_BYTES);
+    }
+
+    public static ASTCache getASTCache() {
+        return cachedParsedASTs;
     }
 
     private final IProject project;
@@ -46,9 +68,11 @@ public class ProjectTraverser
     private final String message;
     private IProgressMonitor monitor;
     private int totalFilesSeen;
+    private boolean batchParsing;
+    private int batchSize;
 
     // initialized when runTraversal is called
-    private IResourceProxyVisitor resourceVisitor;
+    private ResourceVisitor resourceVisitor;
     private IRunnableWithProgress runnable;
 
     public ProjectTraverser(IProject project, String message) {
@@ -57,9 +81,31 @@ public class ProjectTraverser
         this.message = message;
         this.monitor = null;
         this.totalFilesSeen = 0;
+        this.batchParsing = true;
+        this.batchSize = Integer.MAX_VALUE;
+    }
+
+    // When batch parsing is on (the default) all of the source files that are
+    // not already cached are handed to a single ASTParser.createASTs call, so
+    // that the binding environment is set up once and shared across the whole
+    // batch, instead of once per file. Turning it off parses each file with
+    // its own parser, which keeps at most one freshly parsed AST in flight.
+    public void setBatchParsing(boolean batchParsing) {
+        this.batchParsing = batchParsing;
+    }
+
+    // The most source files handed to one createASTs call. By default the whole
+    // project is one batch; smaller batches let an IBatchVisitor start on the
+    // units of one batch while the next one is still being parsed.
+    public void setBatchSize(int batchSize) {
+        this.batchSize = Math.max(1, batchSize);
     }
 
     public void runTraversal(ICompilationUnitVisitor visitor) {
+        if (EclipseUtil.isHeadless()) {
+            runTraversal(visitor, new NullProgressMonitor());
+            return;
+        }
         this.resourceVisitor = new ProjectTraverser.ResourceVisitor(visitor);
         this.runnable = new ProjectTraverser.RunnableWithProgress();
 
@@ -70,8 +116,10 @@ public class ProjectTraverser
                 try {
                     ProjectTraverser.this.totalFilesSeen = 0;
                     dialog.run(true, false, ProjectTraverser.this.runnable);
-                    if (DEBUG)
+                    if (DEBUG) {
                         System.out.printf("Saw %d files%n", totalFilesSeen);
+                        System.out.printf("%s%n", cachedParsedASTs.getStatistics());
+                    }
                 }
                 catch (InvocationTargetException e) {
                     e.printStackTrace();
@@ -83,21 +131,68 @@ public class ProjectTraverser
         });
     }
 
-    public static void markSourceFileDirty(String filePath) {
-        if (DEBUG) {
-            if (cachedParsedASTs.containsKey(filePath)) {
-                System.out.printf("Deleting cached parse for %s%n", filePath);
+    // Runs the traversal in the calling thread, reporting progress to the given
+    // monitor instead of opening a progress dialog
+    public void runTraversal(ICompilationUnitVisitor visitor, IProgressMonitor monitor)
+    {
+        this.resourceVisitor = new ProjectTraverser.ResourceVisitor(visitor);
+        this.runnable = new ProjectTraverser.RunnableWithProgress();
+        try {
+            this.totalFilesSeen = 0;
+            runnable.run(monitor);
+            if (DEBUG) {
+                System.out.printf("Saw %d files%n", totalFilesSeen);
+                System.out.printf("%s%n", cachedParsedASTs.getStatistics());
             }
         }
-        cachedParsedASTs.remove(filePath);
+        catch (InvocationTargetException e) {
+            e.printStackTrace();
+        }
+        catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    public int getTotalFilesSeen() {
+        return totalFilesSeen;
+    }
+
+    // Parses (or fetches from the cache) and visits just the given files, without
+    // a progress dialog. Files that no longer exist, or that aren't Java source
+    // files on the classpath, are skipped.
+    public void traverseFiles(Collection<IFile> files, ICompilationUnitVisitor visitor)
+        throws CoreException
+    {
+        for (IFile file : files) {
+            if (file.exists() && isJavaSourceFile(file)) {
+                CompilationUnit compilationUnit = parseJavaSource(file);
+                visitor.visitCompilationUnit(compilationUnit);
+            }
+        }
+    }
+
+    // The path of the file the given AST was parsed from, which is also the key
+    // of the AST in the cache
+    public static String getSourcePath(CompilationUnit compilationUnit) {
+        IJavaElement element = compilationUnit.getJavaElement();
+        return element.getResource().toString();
+    }
+
+    public static void markSourceFileDirty(String filePath) {
+        boolean removed = cachedParsedASTs.remove(filePath);
+        if (DEBUG && removed) {
+            System.out.printf("Deleting cached parse for %s%n", filePath);
+        }
     }
 
     private class ResourceVisitor implements IResourceProxyVisitor
     {
         private ICompilationUnitVisitor visitor;
+        private List<ICompilationUnit> pendingSources;
 
         public ResourceVisitor(ICompilationUnitVisitor visitor) {
             this.visitor = visitor;
+            this.pendingSources = new ArrayList<ICompilationUnit>();
         }
 
         @Override public boolean visit(IResourceProxy proxy) throws CoreException {
@@ -105,19 +200,69 @@ public class ProjectTraverser
                 IFile file = (IFile)proxy.requestResource();
                 if (isJavaSourceFile(file)) {
                     ++totalFilesSeen;
+                    if (batchParsing && !cachedParsedASTs.containsKey(file.toString())) {
+                        // parsed later, all together, by parsePendingSources
+                        pendingSources.add(JavaCore.createCompilationUnitFrom(file));
+                        return true;
+                    }
                     if (monitor != null) {
                         monitor.subTask(file.getName());
                     }
 
                     CompilationUnit compilationUnit = parseJavaSource(file);
-                    visitor.visitCompilationUnit(compilationUnit);
+                    visitCompilationUnit(compilationUnit);
+                    finishBatch();
+                }
+            }
+            return true;
+        }
+
+        private void visitCompilationUnit(CompilationUnit compilationUnit) {
+            visitor.visitCompilationUnit(compilationUnit);
+            if (monitor != null) {
+                monitor.worked(1);
+            }
+        }
+
+        private void finishBatch() {
+            if (visitor instanceof IBatchVisitor) {
+                ((IBatchVisitor)visitor).batchParsed();
+            }
+        }
+
+        // Parses the sources collected during the visit, with one parser per batch
+        // of at most batchSize sources. Each AST is cached and visited as soon as
+        // the parser hands it over, instead of waiting for its batch to finish.
+        public void parsePendingSources() {
+            int size = pendingSources.size();
+            for (int start = 0; start < size; start += batchSize) {
+                int end = (int)Math.min((long)start + batchSize, size);
+                List<ICompilationUnit> batch = pendingSources.subList(start, end);
+                parseBatch(batch.toArray(new ICompilationUnit[batch.size()]));
+                finishBatch();
+            }
+            pendingSources.clear();
+        }
 
+        private void parseBatch(ICompilationUnit[] sources) {
+            ASTParser parser = newResolvingParser();
+            parser.setProject(javaProject);
+            parser.createASTs(sources, new String[0], new ASTRequestor() {
+                @Override public void acceptAST(ICompilationUnit source,
+                    CompilationUnit result)
+                {
+                    IFile file = (IFile)source.getResource();
                     if (monitor != null) {
-                        monitor.worked(1);
+                        monitor.subTask(file.getName());
+                    }
+                    cachedParsedASTs.put(file.toString(), result);
+                    if (DEBUG) {
+                        System.out.printf("Batch parsed %s, result=%d%n", file
+                            .toString(), System.identityHashCode(result));
                     }
+                    visitCompilationUnit(result);
                 }
-            }
-            return true;
+            }, null);
         }
     }
 
@@ -150,6 +295,7 @@ public class ProjectTraverser
                 monitor.beginTask(userMessage, totalFilesSeen);
                 ProjectTraverser.this.monitor = monitor;
                 project.accept(ProjectTraverser.this.resourceVisitor, 0);
+                ProjectTraverser.this.resourceVisitor.parsePendingSources();
                 monitor.done();
             }
             catch (CoreException e) {
@@ -177,12 +323,11 @@ public class ProjectTraverser
         CompilationUnit result = cachedParsedASTs.get(filePath);
         if (result == null) {
             IJavaProject project = JavaCore.create(file.getProject());
-            ASTParser parser = ASTParser.newParser(AST.JLS3);
+            ASTParser parser = newResolvingParser();
 
             ICompilationUnit source = JavaCore.createCompilationUnitFrom(file);
             parser.setProject(project); // NOTE: this line might not be needed
             parser.setSource(source); // sets compiler options too
-            parser.setResolveBindings(true);
 
             result = (CompilationUnit)parser.createAST(null);
             cachedParsedASTs.put(filePath, result);
@@ -195,4 +340,10 @@ public class ProjectTraverser
         }
         return result;
     }
-}
\ No newline at end of file
+
+    private static ASTParser newResolvingParser() {
+        ASTParser parser = ASTParser.newParser(AST.JLS3);
+        parser.setResolveBindings(true);
+        return parser;
+    }
+}
@@ -0,0 +1,69 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import java.util.AbstractCollection;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+// A read-only view over one of the collections of every EntityShard, in the
+// order the shards are given in. Because nothing is copied, a shard can be
+// added or removed from the EntityDataBase without touching any of the other
+// shards' entities.
+abstract class ShardedCollection<T> extends AbstractCollection<T>
+{
+    private final Collection<EntityShard> shards;
+
+    public ShardedCollection(Collection<EntityShard> shards) {
+        this.shards = shards;
+    }
+
+    // Returns the part of the given shard this collection is a view of
+    protected abstract Collection<? extends T> part(EntityShard shard);
+
+    @Override public int size() {
+        int size = 0;
+        for (EntityShard shard : shards) {
+            size += part(shard).size();
+        }
+        return size;
+    }
+
+    @Override public boolean isEmpty() {
+        for (EntityShard shard : shards) {
+            if (!part(shard).isEmpty()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override public Iterator<T> iterator() {
+        final Iterator<EntityShard> shardIterator = shards.iterator();
+        return new Iterator<T>() {
+            private Iterator<? extends T> current = Collections.<T> emptyList()
+                .iterator();
+
+            public boolean hasNext() {
+                while (!current.hasNext()) {
+                    if (!shardIterator.hasNext()) {
+                        return false;
+                    }
+                    current = part(shardIterator.next()).iterator();
+                }
+                return true;
+            }
+
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                return current.next();
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+}
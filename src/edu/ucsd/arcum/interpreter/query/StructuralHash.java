@@ -0,0 +1,96 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.eclipse.jdt.core.dom.ASTNode;
+import org.eclipse.jdt.core.dom.Comment;
+import org.eclipse.jdt.core.dom.StructuralPropertyDescriptor;
+import org.eclipse.jdt.core.dom.Type;
+
+// A hash of the structure of a subtree that agrees with the
+// ModuloQualificationASTMatcher: subtrees that the matcher finds equal always
+// have the same hash, so subtrees with different hashes can be told apart
+// without matching them. Since the matcher compares types by their bindings
+// (and so java.util.List and List can be the same), every type hashes alike,
+// and so do comments; otherwise the hash combines the class of each node, the
+// strings of its simple properties (names, literals) and the hashes of its
+// children.
+//
+// The hash of each node is computed bottom-up and kept as a property of the
+// node, along with the modification count of its AST at the time: if the AST
+// has since been changed the hash is computed again.
+final class StructuralHash
+{
+    private static final String HASH_PROPERTY = "edu.ucsd.arcum.StructuralHash";
+    private static final int TYPE_HASH = 17;
+    private static final int COMMENT_HASH = 19;
+
+    private final int hash;
+    private final long modificationCount;
+
+    private StructuralHash(int hash, long modificationCount) {
+        this.hash = hash;
+        this.modificationCount = modificationCount;
+    }
+
+    // False only if the matcher can't find the two subtrees equal
+    public static boolean mayMatch(ASTNode n1, ASTNode n2) {
+        return of(n1) == of(n2);
+    }
+
+    public static int of(ASTNode node) {
+        AST ast = node.getAST();
+        // The nodes of a pattern can be hashed by several search threads at once,
+        // and setting a property isn't thread safe
+        synchronized (ast) {
+            Object cached = node.getProperty(HASH_PROPERTY);
+            if (cached != null) {
+                StructuralHash structuralHash = (StructuralHash)cached;
+                if (structuralHash.modificationCount == ast.modificationCount()) {
+                    return structuralHash.hash;
+                }
+            }
+        }
+        int result = compute(node);
+        synchronized (ast) {
+            node.setProperty(HASH_PROPERTY, new StructuralHash(result, ast
+                .modificationCount()));
+        }
+        return result;
+    }
+
+    private static int compute(ASTNode node) {
+        if (node instanceof Type) {
+            return TYPE_HASH;
+        }
+        else if (node instanceof Comment) {
+            return COMMENT_HASH;
+        }
+        int result = node.getNodeType();
+        for (StructuralPropertyDescriptor spd : ASTTraverseTable.getProperties(node)) {
+            result = 31 * result + valueHash(node.getStructuralProperty(spd));
+        }
+        return result;
+    }
+
+    // Simple properties that aren't strings (e.g. operators, flags) are left out
+    private static int valueHash(Object value) {
+        if (value instanceof ASTNode) {
+            return of((ASTNode)value);
+        }
+        else if (value instanceof List) {
+            int result = 1;
+            for (Object element : (List)value) {
+                result = 31 * result + of((ASTNode)element);
+            }
+            return result;
+        }
+        else if (value instanceof String) {
+            return value.hashCode();
+        }
+        else {
+            return 0;
+        }
+    }
+}
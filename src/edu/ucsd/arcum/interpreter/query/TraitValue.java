@@ -3,10 +3,13 @@ package edu.ucsd.arcum.interpreter.query;
 import static edu.ucsd.arcum.util.StringUtil.separate;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
 
 import edu.ucsd.arcum.exceptions.ArcumError;
@@ -22,6 +25,11 @@ public class TraitValue
     private final Set<EntityTuple> entities;
     private final boolean isStatic;
     private final boolean isNested;
+    // For each argument position, once it has been looked up bound: the tuples
+    // filed by the Entity.comparisonHash of their value at that position. The
+    // tuples whose value can't be hashed are filed under NO_HASH, and are
+    // candidates for any value.
+    private final List<Map<Integer, List<EntityTuple>>> indexes;
 
     public TraitValue(String traitName, TraitSignature tupleSetType) {
         this(traitName, tupleSetType, false, false);
@@ -35,6 +43,10 @@ public class TraitValue
         this.entities = Sets.newTreeSet();
         this.isStatic = isStatic;
         this.isNested = isNested;
+        this.indexes = Lists.newArrayList();
+        for (int i = 0; i < tupleSetType.getFormals().size(); ++i) {
+            indexes.add(null);
+        }
     }
 
     public EntityTuple getSingleton() {
@@ -50,13 +62,27 @@ public class TraitValue
 
     // Returns true if this set did not already contain the specified element 
     public boolean addTuple(EntityTuple entityTuple) {
-        return entities.add(entityTuple);
+        boolean result = entities.add(entityTuple);
+        if (result) {
+            List<FormalParameter> formals = traitType.getFormals();
+            for (int i = 0; i < indexes.size(); ++i) {
+                Map<Integer, List<EntityTuple>> index = indexes.get(i);
+                if (index != null) {
+                    fileTuple(index, formals.get(i), entityTuple);
+                }
+            }
+        }
+        return result;
     }
 
     @Override public String toString() {
         return String.format("{%s}", separate(entities, String.format("%n ")));
     }
 
+    public int size() {
+        return entities.size();
+    }
+
     public String getTraitName() {
         return traitName;
     }
@@ -82,17 +108,99 @@ public class TraitValue
     public BindingsSet getMatches(List<Object> args, BindingMap in) {
         List<FormalParameter> formals = traitType.getFormals();
         BindingsSet result = BindingsSet.newEmptySet();
-        for (EntityTuple entity : entities) {
+        for (EntityTuple entity : findCandidates(formals, args)) {
             BindingMap theta = entity.matches(formals, args);
             if (theta != null) {
+                // bound before it's added, since the set files each map by its
+                // bindings
+                theta.addBindings(in);
                 result.addEntry(theta);
             }
         }
-        for (BindingMap bindingMap : result) {
-            // We add these later so that addEntry doesn't have to compare as many
-            // items
-            bindingMap.addBindings(in);
+        return result;
+    }
+
+    // The tuples that can match the given args: when some arg is bound (and can
+    // be hashed), those filed under it or under NO_HASH in the index of its
+    // position, using the position with the fewest of them; otherwise, all of
+    // the tuples
+    private Collection<EntityTuple> findCandidates(List<FormalParameter> formals,
+        List<Object> args)
+    {
+        Collection<EntityTuple> result = entities;
+        for (int i = 0; i < args.size(); ++i) {
+            Object arg = args.get(i);
+            if (arg instanceof VariablePlaceholder) {
+                continue;
+            }
+            int key = Entity.comparisonHash(arg);
+            if (key == Entity.NO_HASH) {
+                continue;
+            }
+            Map<Integer, List<EntityTuple>> index = getIndex(i, formals.get(i));
+            List<EntityTuple> filed = index.get(key);
+            List<EntityTuple> unhashed = index.get(Entity.NO_HASH);
+            if (filed == null && unhashed == null) {
+                return Collections.emptyList();
+            }
+            int size = sizeOf(filed) + sizeOf(unhashed);
+            if (size < result.size()) {
+                if (filed == null || unhashed == null) {
+                    result = (filed == null) ? unhashed : filed;
+                }
+                else {
+                    List<EntityTuple> both = Lists.newArrayListWithExpectedSize(size);
+                    both.addAll(filed);
+                    both.addAll(unhashed);
+                    result = both;
+                }
+            }
         }
         return result;
     }
+
+    private static int sizeOf(List<EntityTuple> filed) {
+        return (filed == null) ? 0 : filed.size();
+    }
+
+    // About how many tuples a lookup with only the given position bound looks
+    // at: the average number filed under each value in the position's index,
+    // along with the ones that can't be hashed
+    public int estimateCandidates(int position) {
+        FormalParameter formal = traitType.getFormals().get(position);
+        Map<Integer, List<EntityTuple>> index = getIndex(position, formal);
+        int unhashed = sizeOf(index.get(Entity.NO_HASH));
+        int keys = (unhashed == 0) ? index.size() : index.size() - 1;
+        if (keys == 0) {
+            return unhashed;
+        }
+        return (entities.size() - unhashed + keys - 1) / keys + unhashed;
+    }
+
+    private Map<Integer, List<EntityTuple>> getIndex(int position,
+        FormalParameter formal)
+    {
+        Map<Integer, List<EntityTuple>> result = indexes.get(position);
+        if (result == null) {
+            result = Maps.newHashMap();
+            for (EntityTuple entity : entities) {
+                fileTuple(result, formal, entity);
+            }
+            indexes.set(position, result);
+        }
+        return result;
+    }
+
+    private static void fileTuple(Map<Integer, List<EntityTuple>> index,
+        FormalParameter formal, EntityTuple entity)
+    {
+        Object value = entity.lookupEntity(formal.getIdentifier());
+        int key = Entity.comparisonHash(value);
+        List<EntityTuple> filed = index.get(key);
+        if (filed == null) {
+            filed = Lists.newArrayList();
+            index.put(key, filed);
+        }
+        filed.add(entity);
+    }
 }
\ No newline at end of file
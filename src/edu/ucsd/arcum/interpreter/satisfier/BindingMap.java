@@ -12,7 +12,6 @@ import org.eclipse.jdt.core.dom.ASTNode;
 import org.eclipse.jdt.core.dom.CompilationUnit;
 
 import com.google.common.collect.Lists;
-import com.google.common.collect.Sets;
 
 import edu.ucsd.arcum.exceptions.ArcumError;
 import edu.ucsd.arcum.interpreter.ast.FormalParameter;
@@ -23,22 +22,38 @@ import edu.ucsd.arcum.interpreter.query.*;
 import edu.ucsd.arcum.util.Pure;
 import edu.ucsd.arcum.util.StringUtil;
 
+// The bindings are kept in a persistent chain of links, newest first, where a
+// newer link for a variable shadows the older ones. Binding a variable only adds
+// a link, and maps derived from one another (e.g. by consistentMerge) share the
+// links they have in common, so a merge only allocates the bindings that
+// differ. The sorted entries of a chain, which comparing and iterating need,
+// are computed once for each chain and kept with its newest link.
+//
+// Like the TreeMaps this replaces, a variable only has a type (which may be
+// null) when it was bound with one, and addBindings and bindResultAs don't
+// give it one.
 public class BindingMap implements Comparable<BindingMap>
 {
     private static final String SPECIAL_RESULT_LABEL = "<RESULT>";
 
+    // A chain is rebuilt without its shadowed links once it gets this much
+    // longer than it was the last time
+    private static final int COMPACTION_SLACK = 16;
+
     // EXAMPLE: Issue: we can't label the Object as an Entity in the generic arg
     // could type inference come to the aid? Or labeling type args?
-    private final @Union("Entity") SortedMap<String, Object> bindings;
-    private final SortedMap<String, EntityType> types;
+    private Link head;
 
     public static BindingMap newEmptyMap() {
         return new BindingMap();
     }
 
     private BindingMap() {
-        this.bindings = new TreeMap<String, Object>();
-        this.types = new TreeMap<String, EntityType>();
+        this.head = null;
+    }
+
+    private BindingMap(Link head) {
+        this.head = head;
     }
 
     public BindingMap(Map<String, Object> values, Map<String, EntityType> types) {
@@ -57,38 +72,73 @@ public class BindingMap implements Comparable<BindingMap>
 
     public void bind(String id, @Union("Entity") Object entity, EntityType type) {
         if (!id.equals(VariableNode.DONT_CARE)) {
-            bindings.put(id, entity);
-            types.put(id, type);
+            push(id, entity, type, true);
         }
     }
 
     public void bindResultAs(String name) {
-        @Union("Entity") Object entity = bindings.get(SPECIAL_RESULT_LABEL);
-//        bindings.remove(SPECIAL_RESULT_LABEL);
-        bindings.put(name, entity);
+        @Union("Entity") Object entity = lookup(SPECIAL_RESULT_LABEL);
+        // the name keeps the type it had, if any
+        Link previous = find(head, name);
+        if (previous == null) {
+            push(name, entity, null, false);
+        }
+        else {
+            push(name, entity, previous.type, previous.typed);
+        }
     }
 
     public Object getResult() {
-        return bindings.get(SPECIAL_RESULT_LABEL);
+        return lookup(SPECIAL_RESULT_LABEL);
     }
 
     // MACNEIL: Should some calls to this actually be calls to consistentMerge?
     public void addBindings(BindingMap theta) {
-        for (Entry<String, Object> entry : theta.bindings.entrySet()) {
-            String newKey = entry.getKey();
-            Object newValue = entry.getValue();
-            if (isTempName(newKey)) {
+        Entries entries = entries(theta.head);
+        for (int i = 0; i < entries.size(); ++i) {
+            String name = entries.names[i];
+            if (name.equals(SPECIAL_RESULT_LABEL)) {
                 continue;
             }
-            if (this.bindings.containsKey(newKey)) {
-                ArcumError.fatalError("Variable \"%s\" is multiple-bound", newKey);
+            if (find(this.head, name) != null) {
+                ArcumError.fatalError("Variable \"%s\" is multiple-bound", name);
+            }
+            push(name, entries.values[i], null, false);
+        }
+    }
+
+    private void push(String name, Object value, EntityType type, boolean typed) {
+        head = new Link(head, name, value, type, typed);
+        if (head.length >= 2 * head.compactedLength + COMPACTION_SLACK) {
+            head = compact(entries(head));
+        }
+    }
+
+    private static Link compact(Entries entries) {
+        Link result = null;
+        for (int i = entries.size() - 1; i >= 0; --i) {
+            result = new Link(result, entries.names[i], entries.values[i],
+                entries.types[i], entries.typed[i]);
+        }
+        if (result != null) {
+            result.compactedLength = result.length;
+        }
+        return result;
+    }
+
+    // The newest link of the chain that binds the variable, or null if none does
+    private static Link find(Link chain, String name) {
+        for (Link link = chain; link != null; link = link.next) {
+            if (link.name.equals(name)) {
+                return link;
             }
-            bindings.put(newKey, newValue);
         }
+        return null;
     }
 
-    private boolean isTempName(String key) {
-        return key.equals(SPECIAL_RESULT_LABEL);
+    private Object lookup(String name) {
+        Link link = find(head, name);
+        return (link == null) ? null : link.value;
     }
 
     @Pure public BindingMap consistentMerge(BindingMap... maps) {
@@ -103,35 +153,41 @@ public class BindingMap implements Comparable<BindingMap>
     // variables that do not have equal values). When the values of a specific
     // variable in the bindings have the same name and the same value the value of
     // the result will be what was found in "that".
+    //
+    // The result starts from this map's chain, so only the bindings of that map
+    // which aren't already the same here are added to it. Every variable of the
+    // result has a type, as it did when the result was built with bind.
     @Pure public BindingMap consistentMerge(BindingMap that) {
-        BindingMap result = new BindingMap();
-        for (Entry<String, Object> thisEntry : this.bindings.entrySet()) {
-            String thisID = thisEntry.getKey();
-            @Union("Entity") Object thisEntity = thisEntry.getValue();
-            if (!isTempName(thisID) && that.bindings.containsKey(thisID)) {
-                @Union("Entity") Object thatEntity = that.bindings.get(thisID);
-                if (Entity.compareTo(thisEntity, thatEntity) == 0) {
-                    // Even though thatEntity is equivalent to thisEntity we keep
-                    // the newer one from that
-                    result.bind(thisID, thatEntity, that.types.get(thisID));
-                }
-                else {
+        BindingMap result = new BindingMap(this.head);
+        Entries entries = entries(that.head);
+        for (int i = 0; i < entries.size(); ++i) {
+            String name = entries.names[i];
+            if (name.equals(SPECIAL_RESULT_LABEL)) {
+                continue;
+            }
+            @Union("Entity") Object thatEntity = entries.values[i];
+            EntityType thatType = entries.types[i];
+            Link thisLink = find(this.head, name);
+            if (thisLink != null) {
+                if (Entity.compareTo(thisLink.value, thatEntity) != 0) {
                     // the two bindings can never be consistent
                     return null;
                 }
+                if (thisLink.value == thatEntity && thisLink.type == thatType
+                    && thisLink.typed)
+                {
+                    continue;
+                }
+                // Even though thatEntity is equivalent to thisEntity we keep
+                // the newer one from that
             }
-            else {
-                result.bind(thisID, thisEntity, this.types.get(thisID));
-            }
+            result.push(name, thatEntity, thatType, true);
         }
-        for (Entry<String, Object> thatEntry : that.bindings.entrySet()) {
-            String thatID = thatEntry.getKey();
-            if (isTempName(thatID))
-                continue;
-            @Union("Entity") Object thatEntity = thatEntry.getValue();
-            if (!result.bindings.containsKey(thatID)) {
-                // add it only if we haven't already
-                result.bind(thatID, thatEntity, that.types.get(thatID));
+        Entries thisEntries = entries(this.head);
+        for (int i = 0; i < thisEntries.size(); ++i) {
+            String name = thisEntries.names[i];
+            if (!thisEntries.typed[i] && !find(result.head, name).typed) {
+                result.push(name, thisEntries.values[i], null, true);
             }
         }
         return result;
@@ -140,39 +196,61 @@ public class BindingMap implements Comparable<BindingMap>
     // Returns a copy of the binding map, but with all bindings associated with
     // the given variables removed
     @Pure public BindingMap withVarsRemoved(Set<String> varNames) {
+        Entries entries = entries(head);
+        boolean anyChanged = false;
+        for (int i = 0; i < entries.size(); ++i) {
+            if (varNames.contains(entries.names[i]) || !entries.typed[i]) {
+                anyChanged = true;
+                break;
+            }
+        }
+        if (!anyChanged) {
+            return new BindingMap(head);
+        }
         BindingMap result = BindingMap.newEmptyMap();
-        for (Entry<String, Object> entry : this.bindings.entrySet()) {
-            String id = entry.getKey();
-            Object entity = entry.getValue();
+        for (int i = entries.size() - 1; i >= 0; --i) {
+            String name = entries.names[i];
+            if (!varNames.contains(name)) {
+                result.push(name, entries.values[i], entries.types[i], true);
+            }
+        }
+        return result;
+    }
 
-            if (!varNames.contains(id)) {
-                result.bind(id, entity, this.types.get(id));
+    // Returns a copy of the binding map with only the bindings associated with
+    // the given variables
+    @Pure public BindingMap withOnlyVars(Collection<String> varNames) {
+        Entries entries = entries(head);
+        BindingMap result = BindingMap.newEmptyMap();
+        for (int i = entries.size() - 1; i >= 0; --i) {
+            String name = entries.names[i];
+            if (varNames.contains(name)) {
+                result.push(name, entries.values[i], entries.types[i], true);
             }
         }
         return result;
     }
 
     public boolean isEmpty() {
-        return bindings.isEmpty();
+        return head == null;
     }
 
     @Override public String toString() {
+        Entries entries = entries(head);
         StringBuilder buff = new StringBuilder();
         buff.append("(");
-        Iterator<Entry<String, Object>> i = bindings.entrySet().iterator();
-        while (i.hasNext()) {
-            Entry<String, Object> entry = i.next();
-            String id = entry.getKey();
-            @Union("Entity") Object entity = entry.getValue();
+        for (int i = 0; i < entries.size(); ++i) {
+            String id = entries.names[i];
+            @Union("Entity") Object entity = entries.values[i];
             buff.append(id);
             buff.append(String.format(" [%x]: ", System.identityHashCode(entity)));
             buff.append(Entity.valueAsString(entity));
-            if (i.hasNext()) {
+            if (i + 1 < entries.size()) {
                 buff.append(String.format(",%n "));
             }
         }
         buff.append("): ");
-        buff.append(this.bindings.size());
+        buff.append(entries.size());
         return buff.toString();
     }
 
@@ -183,26 +261,26 @@ public class BindingMap implements Comparable<BindingMap>
         // structure: The links won't be too deep because it's bound by the number
         // of variables used in the expression, with globals serving as the base
         // binding map. It'd be nice for BindingMap instances to be immutable as well.
-        if (this == that) {
+        if (this == that || this.head == that.head) {
             return 0;
         }
         else {
-            int thisSize = this.bindings.size();
-            int thatSize = that.bindings.size();
+            Entries thisEntries = entries(this.head);
+            Entries thatEntries = entries(that.head);
+            int thisSize = thisEntries.size();
+            int thatSize = thatEntries.size();
             if (thisSize != thatSize) {
                 return thisSize - thatSize;
             }
-            Iterator<String> i = this.bindings.keySet().iterator();
-            Iterator<String> j = that.bindings.keySet().iterator();
-            while (i.hasNext()) {
-                String thisID = i.next();
-                String thatID = j.next();
+            for (int i = 0; i < thisSize; ++i) {
+                String thisID = thisEntries.names[i];
+                String thatID = thatEntries.names[i];
                 if (!thisID.equals(thatID)) {
                     return thisID.compareTo(thatID);
                 }
                 else {
-                    @Union("Entity") Object thisEntity = this.bindings.get(thisID);
-                    @Union("Entity") Object thatEntity = that.bindings.get(thisID);
+                    @Union("Entity") Object thisEntity = thisEntries.values[i];
+                    @Union("Entity") Object thatEntity = thatEntries.values[i];
                     int k = Entity.compareToWithLocations(thisEntity, thatEntity);
                     if (k != 0) {
                         return k;
@@ -213,6 +291,23 @@ public class BindingMap implements Comparable<BindingMap>
         }
     }
 
+    // Maps that compareTo finds equal have the same fingerprint, unless one of
+    // them binds an entity that can't be hashed, in which case its fingerprint
+    // is Entity.NO_HASH
+    public int fingerprint() {
+        Entries entries = entries(head);
+        int result = entries.size();
+        for (int i = 0; i < entries.size(); ++i) {
+            int hash = Entity.comparisonHash(entries.values[i]);
+            if (hash == Entity.NO_HASH) {
+                return Entity.NO_HASH;
+            }
+            result = 31 * result + entries.names[i].hashCode();
+            result = 31 * result + hash;
+        }
+        return result;
+    }
+
     public List<EntityTuple> asEntityTuple(List<TraitSignature> types) {
         List<EntityTuple> result = new ArrayList<EntityTuple>();
         for (TraitSignature type : types) {
@@ -233,7 +328,7 @@ public class BindingMap implements Comparable<BindingMap>
             List<ASTNode> entities = Lists.newArrayListWithExpectedSize(numMembers);
             Map<String, Object> tupleSubValues = newHashMapWithExpectedSize(numMembers);
             for (String var : vars) {
-                Object entity = bindings.get(var);
+                Object entity = lookupEntity(var);
                 tupleSubValues.put(var, entity);
                 if (entity instanceof ASTNode) {
                     entities.add((ASTNode)entity);
@@ -311,16 +406,16 @@ public class BindingMap implements Comparable<BindingMap>
     }
 
     public Object lookupEntity(String name) {
-        return bindings.get(name);
+        return lookup(name);
     }
 
     public String lookupEntitiesID(Object entity) {
-        entrySearch: for (Entry<String, Object> entry : bindings.entrySet()) {
-            String key = entry.getKey();
-            Object value = entry.getValue();
+        Entries entries = entries(head);
+        entrySearch: for (int i = 0; i < entries.size(); ++i) {
+            String key = entries.names[i];
             if (key.equals(SPECIAL_RESULT_LABEL))
                 continue entrySearch;
-            if (value == entity) {
+            if (entries.values[i] == entity) {
                 return key;
             }
         }
@@ -329,10 +424,11 @@ public class BindingMap implements Comparable<BindingMap>
 
     public List<TraitValue> extractBuiltInTraits() {
         List<TraitValue> result = Lists.newArrayList();
-        for (Entry<String, Object> entry : bindings.entrySet()) {
-            String traitName = entry.getKey();
+        Entries entries = entries(head);
+        for (int i = 0; i < entries.size(); ++i) {
+            String traitName = entries.names[i];
             if (EntityDataBase.isBuiltInTrait(traitName)) {
-                Object value = entry.getValue();
+                Object value = entries.values[i];
                 result.add((TraitValue)value);
             }
         }
@@ -340,21 +436,114 @@ public class BindingMap implements Comparable<BindingMap>
     }
 
     public void boundValueUpdated(Object originalValue, Object newValue) {
-        Set<String> keys = Sets.newHashSet(bindings.keySet());
-        for (String key : keys) {
-            Object value = bindings.get(key);
-            if (value == originalValue) {
+        Entries entries = entries(head);
+        for (int i = 0; i < entries.size(); ++i) {
+            if (entries.values[i] == originalValue) {
                 if (DEBUG) {
                     System.out.printf("updated %s%n ----to %s%n", StringUtil
                         .debugDisplay(originalValue), StringUtil.debugDisplay(newValue));
                     System.out.flush();
                 }
-                bindings.put(key, newValue);
+                push(entries.names[i], newValue, entries.types[i], entries.typed[i]);
             }
         }
     }
 
+    // The variables bound with a type, and their types (some of which are null)
     public Map<String,EntityType> getTypes() {
-        return types;
+        Map<String, EntityType> result = new TreeMap<String, EntityType>();
+        Entries entries = entries(head);
+        for (int i = 0; i < entries.size(); ++i) {
+            if (entries.typed[i]) {
+                result.put(entries.names[i], entries.types[i]);
+            }
+        }
+        return result;
+    }
+
+    private static Entries entries(Link chain) {
+        if (chain == null) {
+            return Entries.EMPTY;
+        }
+        Entries result = chain.entries;
+        if (result == null) {
+            result = new Entries(chain);
+            chain.entries = result;
+        }
+        return result;
+    }
+
+    // One binding of a chain. Links are never changed once made (but for the
+    // entries, which are only cached), so chains can be shared.
+    private static class Link
+    {
+        private final Link next;
+        private final String name;
+        private final @Union("Entity") Object value;
+        private final EntityType type;
+        // false for bindings that were added without a type
+        private final boolean typed;
+        private final int length;
+        // the length of the chain when it was last compacted
+        private int compactedLength;
+        private Entries entries;
+
+        public Link(Link next, String name, Object value, EntityType type,
+            boolean typed)
+        {
+            this.next = next;
+            this.name = name;
+            this.value = value;
+            this.type = type;
+            this.typed = typed;
+            this.length = (next == null) ? 1 : next.length + 1;
+            this.compactedLength = (next == null) ? 0 : next.compactedLength;
+        }
+    }
+
+    // The bindings of a chain that aren't shadowed, sorted by variable name
+    private static class Entries
+    {
+        private static final Entries EMPTY = new Entries(null);
+
+        private final String[] names;
+        private final Object[] values;
+        private final EntityType[] types;
+        private final boolean[] typed;
+
+        public Entries(Link chain) {
+            int capacity = (chain == null) ? 0 : chain.length;
+            Link[] found = new Link[capacity];
+            int size = 0;
+            nextLink: for (Link link = chain; link != null; link = link.next) {
+                for (int i = 0; i < size; ++i) {
+                    if (found[i].name.equals(link.name)) {
+                        continue nextLink;
+                    }
+                }
+                // insertion sort by name, the chains being short
+                int i = size;
+                while (i > 0 && found[i - 1].name.compareTo(link.name) > 0) {
+                    found[i] = found[i - 1];
+                    --i;
+                }
+                found[i] = link;
+                ++size;
+            }
+            this.names = new String[size];
+            this.values = new Object[size];
+            this.types = new EntityType[size];
+            this.typed = new boolean[size];
+            for (int i = 0; i < size; ++i) {
+                names[i] = found[i].name;
+                values[i] = found[i].value;
+                types[i] = found[i].type;
+                typed[i] = found[i].typed;
+            }
+        }
+
+        public int size() {
+            return names.length;
+        }
     }
 }
\ No newline at end of file
@@ -4,22 +4,39 @@ import static edu.ucsd.arcum.ArcumPlugin.DEBUG;
 
 import java.util.*;
 
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import edu.ucsd.arcum.exceptions.ArcumError;
 import edu.ucsd.arcum.interpreter.ast.TraitSignature;
+import edu.ucsd.arcum.interpreter.query.Entity;
 import edu.ucsd.arcum.interpreter.query.EntityTuple;
 import edu.ucsd.arcum.util.StringUtil;
 
+// The maps are kept in the order they were added, and are also filed by their
+// fingerprints, so a map being added is only compared with the maps that have
+// the same fingerprint, instead of being sorted into the whole set. The maps
+// filed under Entity.NO_HASH can be equal to maps with any fingerprint, so
+// they are compared with every map being added, and a map with that
+// fingerprint is compared with all of the maps. A set is built by adding to it
+// in place and can then be frozen, after which it is only read; the iterator
+// walks the maps as they are, without copying them.
 public class BindingsSet implements Iterable<BindingMap>
 {
-    private final SortedSet<BindingMap> set;
+    private final List<BindingMap> maps;
+    private final Map<Integer, List<BindingMap>> buckets;
+    private boolean isFrozen;
 
     private BindingsSet() {
-        this.set = new TreeSet<BindingMap>();
+        this.maps = Lists.newArrayList();
+        this.buckets = Maps.newHashMap();
+        this.isFrozen = false;
     }
 
     public BindingsSet union(BindingsSet that) {
         BindingsSet result = newEmptySet();
-        result.set.addAll(this.set);
-        result.set.addAll(that.set);
+        result.addAll(this);
+        result.addAll(that);
         return result;
     }
 
@@ -36,19 +53,68 @@ public class BindingsSet implements Iterable<BindingMap>
     }
 
     public void addEntry(BindingMap theta) {
-        set.add(theta);
+        if (isFrozen) {
+            ArcumError.fatalError("Internal error: a frozen BindingsSet was changed");
+        }
+        int fingerprint = theta.fingerprint();
+        if (contains(theta, fingerprint)) {
+            return;
+        }
+        List<BindingMap> bucket = buckets.get(fingerprint);
+        if (bucket == null) {
+            bucket = new ArrayList<BindingMap>(1);
+            buckets.put(fingerprint, bucket);
+        }
+        bucket.add(theta);
+        maps.add(theta);
+    }
+
+    // The in-place union: adds the maps of the other set to this one
+    public void addAll(BindingsSet that) {
+        for (BindingMap theta : that.maps) {
+            addEntry(theta);
+        }
+    }
+
+    public BindingsSet freeze() {
+        this.isFrozen = true;
+        return this;
+    }
+
+    public boolean contains(BindingMap theta) {
+        return contains(theta, theta.fingerprint());
+    }
+
+    private boolean contains(BindingMap theta, int fingerprint) {
+        if (fingerprint == Entity.NO_HASH) {
+            return findIn(maps, theta);
+        }
+        return findIn(buckets.get(fingerprint), theta)
+            || findIn(buckets.get(Entity.NO_HASH), theta);
+    }
+
+    private static boolean findIn(List<BindingMap> bucket, BindingMap theta) {
+        if (bucket == null) {
+            return false;
+        }
+        for (BindingMap member : bucket) {
+            if (member.compareTo(theta) == 0) {
+                return true;
+            }
+        }
+        return false;
     }
 
     @Override
     public String toString() {
-        return String.format("{%s} = %d members", StringUtil.separate(this.set, String
-            .format(";%n")), this.set.size());
+        return String.format("{%s} = %d members", StringUtil.separate(this.maps, String
+            .format(";%n")), this.maps.size());
     }
 
     public Collection<List<EntityTuple>> extractAsEntityTuples(List<TraitSignature> types)
     {
-        List<List<EntityTuple>> result = new ArrayList<List<EntityTuple>>(set.size());
-        for (BindingMap bindingMap : set) {
+        List<List<EntityTuple>> result = new ArrayList<List<EntityTuple>>(maps.size());
+        for (BindingMap bindingMap : maps) {
             List<EntityTuple> entityTuple = bindingMap.asEntityTuple(types);
             result.add(entityTuple);
         }
@@ -60,15 +126,27 @@ public class BindingsSet implements Iterable<BindingMap>
     }
 
     public int size() {
-        return set.size();
+        return maps.size();
+    }
+
+    public boolean isEmpty() {
+        return maps.isEmpty();
     }
 
     @Override
     public Iterator<BindingMap> iterator() {
-        return set.iterator();
+        return Collections.unmodifiableList(maps).iterator();
     }
 
     public boolean isEquivalentTo(BindingsSet that) {
-        return this.set.equals(that.set);
+        if (this.size() != that.size()) {
+            return false;
+        }
+        for (BindingMap theta : this.maps) {
+            if (!that.contains(theta)) {
+                return false;
+            }
+        }
+        return true;
     }
 }
@@ -0,0 +1,137 @@
+package edu.ucsd.arcum.interpreter.satisfier;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+import edu.ucsd.arcum.interpreter.ast.expressions.*;
+import edu.ucsd.arcum.interpreter.query.ArcumDeclarationTable;
+import edu.ucsd.arcum.interpreter.query.EntityDataBase;
+import edu.ucsd.arcum.interpreter.query.EntityType;
+import edu.ucsd.arcum.interpreter.query.IEntityLookup;
+import edu.ucsd.arcum.interpreter.query.TraitValue;
+
+// Chooses the order the clauses of a conjunction are evaluated in (in matching
+// mode). Each variable that isn't bound yet is owned by the first clause, in
+// source order, that refers to it, and a clause is only evaluated after the
+// owners of all the other variables it refers to. So every clause sees the same
+// variables bound (and unbound) as it would in source order, and the result is
+// the same: a negation or a function whose arguments were bound by an earlier
+// clause still runs after that clause, and the value of each variable still
+// comes from the clause that bound it first.
+//
+// Within that freedom, clauses that bind nothing new (e.g., negations, or
+// predicates on variables already bound) are evaluated as soon as they can,
+// since they can only shrink the intermediate result; otherwise the clause
+// expected to produce the fewest bindings goes next. The estimates are the
+// sizes of the traits looked up and the number of entities of a pattern's type.
+final class ConjunctionPlanner
+{
+    private static final int UNKNOWN = Integer.MAX_VALUE;
+
+    private ConjunctionPlanner() {
+    }
+
+    public static List<ConstraintExpression> plan(
+        Collection<? extends ConstraintExpression> conjuncts, IEntityLookup lookup,
+        EntityDataBase edb, TypeLookupTable types)
+    {
+        List<ConstraintExpression> clauses = Lists.newArrayList(conjuncts);
+        int n = clauses.size();
+
+        Map<String, Integer> owners = Maps.newHashMap();
+        List<Set<String>> references = Lists.newArrayList();
+        for (int i = 0; i < n; ++i) {
+            Set<String> unbound = Sets.newHashSet();
+            for (String var : clauses.get(i).getArcumVariableReferences()) {
+                if (!var.equals(ArcumDeclarationTable.SPECIAL_ANY_VARIABLE)
+                    && lookup.lookupEntity(var) == null)
+                {
+                    unbound.add(var);
+                    if (!owners.containsKey(var)) {
+                        owners.put(var, i);
+                    }
+                }
+            }
+            references.add(unbound);
+        }
+
+        boolean[] bindsNothing = new boolean[n];
+        List<Set<Integer>> dependencies = Lists.newArrayList();
+        for (int i = 0; i < n; ++i) {
+            Set<Integer> needed = Sets.newHashSet();
+            bindsNothing[i] = true;
+            for (String var : references.get(i)) {
+                int owner = owners.get(var);
+                if (owner == i) {
+                    bindsNothing[i] = false;
+                }
+                else {
+                    needed.add(owner);
+                }
+            }
+            dependencies.add(needed);
+        }
+
+        List<ConstraintExpression> result = Lists.newArrayListWithCapacity(n);
+        boolean[] placed = new boolean[n];
+        for (int round = 0; round < n; ++round) {
+            int next = -1;
+            int nextEstimate = UNKNOWN;
+            for (int i = 0; i < n; ++i) {
+                if (placed[i] || !allPlaced(dependencies.get(i), placed)) {
+                    continue;
+                }
+                if (bindsNothing[i]) {
+                    next = i;
+                    break;
+                }
+                int estimate = estimate(clauses.get(i), lookup, edb, types);
+                if (next == -1 || estimate < nextEstimate) {
+                    next = i;
+                    nextEstimate = estimate;
+                }
+            }
+            placed[next] = true;
+            result.add(clauses.get(next));
+        }
+        return result;
+    }
+
+    private static boolean allPlaced(Set<Integer> clauses, boolean[] placed) {
+        for (int i : clauses) {
+            if (!placed[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // About how many bindings the clause produces when evaluated on its own
+    private static int estimate(ConstraintExpression clause, IEntityLookup lookup,
+        EntityDataBase edb, TypeLookupTable types)
+    {
+        if (clause instanceof FunctionalExpression) {
+            IFunction function = ((FunctionalExpression)clause).getFunction();
+            if (function instanceof TraitFunction) {
+                Object trait = lookup.lookupEntity(function.getName());
+                if (trait instanceof TraitValue) {
+                    return ((TraitValue)trait).size();
+                }
+            }
+        }
+        else if (clause instanceof UnificationExpression) {
+            UnificationExpression unifyExpr = (UnificationExpression)clause;
+            if (unifyExpr.getRightHandSide() instanceof PatternExpression) {
+                EntityType type = types.lookupType(unifyExpr.getName());
+                return edb.estimateCandidates(type);
+            }
+        }
+        return UNKNOWN;
+    }
+}
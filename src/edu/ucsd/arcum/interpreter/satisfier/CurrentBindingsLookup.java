@@ -60,6 +60,10 @@ public class CurrentBindingsLookup implements IEntityLookup
         return base.newParser(matchingMode);
     }
 
+    @Override public String getImports() {
+        return base.getImports();
+    }
+
     @Override public ITypeBinding lookupTypeBinding(ASTNode node) {
         return base.lookupTypeBinding(node);
     }
@@ -64,6 +64,10 @@ public class MaskedLookup implements IEntityLookup
         return base.newParser(matchingMode);
     }
 
+    @Override public String getImports() {
+        return base.getImports();
+    }
+
     @Override
     public TypeLookupTable getTypeLookupTable() {
         TypeLookupTable result = base.getTypeLookupTable();
@@ -58,11 +58,19 @@ public class NodesWithLocations
             TraitSignature type = trait.getTraitType();
             String name = type.getName();
 
-            for (TraitValue builtInAlreadyPresent : this.locations) {
+            for (int i = 0; i < this.locations.size(); ++i) {
+                TraitValue builtInAlreadyPresent = this.locations.get(i);
                 if (type.equals(builtInAlreadyPresent.getTraitType())) {
+                    // the built-in traits are shared by the EntityDataBase, so
+                    // they're merged into a new trait instead of into either one
+                    TraitValue merged = new TraitValue(name, type, false, true);
+                    for (EntityTuple entityTuple : builtInAlreadyPresent.getEntities()) {
+                        merged.addTuple(entityTuple);
+                    }
                     for (EntityTuple entityTuple : trait.getEntities()) {
-                        builtInAlreadyPresent.addTuple(entityTuple);
+                        merged.addTuple(entityTuple);
                     }
+                    this.locations.set(i, merged);
                     continue toAdd;
                 }
             }
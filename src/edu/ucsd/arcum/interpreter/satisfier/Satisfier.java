@@ -236,7 +236,7 @@ public class Satisfier
     }
 
     private boolean representsTrue(BindingsSet exprEvaluation, BindingMap originalInput) {
-        return !exprEvaluation.isEquivalentTo(BindingsSet.newEmptySet());
+        return !exprEvaluation.isEmpty();
     }
 
     // matches against something already found in "in" or literal values (such as
@@ -251,7 +251,7 @@ public class Satisfier
         try {
             EntityDataBase unpopulatedEDB = new EntityDataBase(null);
             this.edb = unpopulatedEDB;
-            return sat(phi, savedTypesForCallback, expectedType, in, null);
+            return sat(phi, savedTypesForCallback, expectedType, in, null).freeze();
         }
         finally {
             this.edb = realEDB;
@@ -364,12 +364,18 @@ public class Satisfier
                 }
             }
             else {
-                final ProgramFragmentFactory builder;
                 final List<ProgramFragment> fragments;
 
-                builder = new ProgramFragmentFactory(patternExpr, expectedType, lookup,
-                    types, false);
-                fragments = builder.getAbstractProgramFragments();
+                if (edb != null) {
+                    fragments = edb.getProgramFragments(patternExpr, expectedType,
+                        lookup, types, false);
+                }
+                else {
+                    ProgramFragmentFactory builder;
+                    builder = new ProgramFragmentFactory(patternExpr, expectedType,
+                        lookup, types, false);
+                    fragments = builder.getAbstractProgramFragments();
+                }
 
                 result = BindingsSet.newEmptySet();
 
@@ -405,7 +411,7 @@ public class Satisfier
             BindingsSet result = BindingsSet.newEmptySet();
             for (ConstraintExpression disjunct : disjuncts) {
                 BindingsSet sat = sat(disjunct, types, expectedType, in, knownEntity);
-                result = result.union(sat);
+                result.addAll(sat);
             }
             return result;
         }
@@ -420,16 +426,45 @@ public class Satisfier
                 return trueResult(in);
             }
             else {
+                // only reordered where no result is wanted from the last clause
+                if (matchingMode && knownEntity == null
+                    && expectedType == EntityType.ERROR && conjuncts.size() > 1)
+                {
+                    CurrentBindingsLookup lookup = new CurrentBindingsLookup(table, in);
+                    conjuncts = ConjunctionPlanner.plan(conjuncts, lookup, edb, types);
+                }
                 Iterator<? extends ConstraintExpression> iterator = conjuncts.iterator();
                 ConstraintExpression conjunct = iterator.next();
                 BindingsSet bigTheta = sat(conjunct, types, expectedType, in, knownEntity);
                 while (iterator.hasNext()) {
                     conjunct = iterator.next();
                     BindingsSet result = BindingsSet.newEmptySet();
-                    for (BindingMap theta : bigTheta) {
-                        BindingsSet sat = sat(conjunct, types, expectedType, theta,
+                    List<String> joinVars = null;
+                    if (matchingMode && bigTheta.size() > 1) {
+                        joinVars = TraitJoin.getJoinVariables(conjunct, types);
+                    }
+                    if (joinVars != null) {
+                        CurrentBindingsLookup lookup;
+                        lookup = new CurrentBindingsLookup(table, in);
+                        if (!TraitJoin.isCheaperThanLookups(bigTheta, conjunct,
+                            lookup))
+                        {
+                            joinVars = null;
+                        }
+                    }
+                    if (joinVars != null) {
+                        // the trait is looked up once, with only the bindings of
+                        // in, which every map of bigTheta extends
+                        BindingsSet lookups = sat(conjunct, types, expectedType, in,
                             knownEntity);
-                        result = result.union(sat);
+                        TraitJoin.join(bigTheta, lookups, joinVars, result);
+                    }
+                    else {
+                        for (BindingMap theta : bigTheta) {
+                            BindingsSet sat = sat(conjunct, types, expectedType, theta,
+                                knownEntity);
+                            result.addAll(sat);
+                        }
                     }
                     bigTheta = result;
                 }
@@ -584,7 +619,7 @@ public class Satisfier
                     allConditionsFailed = false;
                     BindingsSet conditionValue = sat(value, types, expectedType, in,
                         knownEntity);
-                    result = result.union(conditionValue);
+                    result.addAll(conditionValue);
                 }
             }
             if (allConditionsFailed) {
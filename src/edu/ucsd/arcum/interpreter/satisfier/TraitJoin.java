@@ -0,0 +1,207 @@
+package edu.ucsd.arcum.interpreter.satisfier;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import edu.ucsd.arcum.interpreter.ast.expressions.ConstraintExpression;
+import edu.ucsd.arcum.interpreter.ast.expressions.FunctionalExpression;
+import edu.ucsd.arcum.interpreter.ast.expressions.TraitFunction;
+import edu.ucsd.arcum.interpreter.ast.expressions.VariableReferenceExpression;
+import edu.ucsd.arcum.interpreter.query.Entity;
+import edu.ucsd.arcum.interpreter.query.IEntityLookup;
+import edu.ucsd.arcum.interpreter.query.TraitValue;
+
+// Joins the binding maps found so far in a conjunction with a trait lookup,
+// such as hasField(t, f), instead of looking the trait up once for each map.
+// The lookup is evaluated once, with the bindings the conjunction started
+// with, its results are hashed on the variables the maps already bind, and
+// each map is only paired with the results in its bucket, along with the
+// results whose values can't be hashed. A result pairs with a map when it has
+// the value the map binds for each of the lookup's variables, compared just as
+// TraitValue.getMatches compares a bound argument; the pair then gives the
+// same bindings the lookup would have given for that map on its own.
+//
+// The join always looks at every tuple of the trait, so it is only used when
+// the per-map lookups, each going through one of the trait's indexes, would
+// look at more tuples in total.
+final class TraitJoin
+{
+    private TraitJoin() {
+    }
+
+    // The variables of the lookup, in the order of its arguments, or null if
+    // the clause isn't a trait lookup on distinct, declared variables
+    public static List<String> getJoinVariables(ConstraintExpression clause,
+        TypeLookupTable types)
+    {
+        if (!(clause instanceof FunctionalExpression)) {
+            return null;
+        }
+        FunctionalExpression func = (FunctionalExpression)clause;
+        if (!(func.getFunction() instanceof TraitFunction)) {
+            return null;
+        }
+        List<String> result = Lists.newArrayList();
+        for (ConstraintExpression arg : func.getArgs()) {
+            if (!(arg instanceof VariableReferenceExpression)) {
+                return null;
+            }
+            VariableReferenceExpression var = (VariableReferenceExpression)arg;
+            if (var.isSpecialAnyVariable()) {
+                continue;
+            }
+            String name = var.getName();
+            if (result.contains(name) || !types.hasInformationFor(name)) {
+                return null;
+            }
+            result.add(name);
+        }
+        return result;
+    }
+
+    // True if looking the trait up once for each map of the left set would look
+    // at more tuples than the whole trait has, which is what the join looks at.
+    // The maps are assumed to bind the same variables as the first one does.
+    public static boolean isCheaperThanLookups(BindingsSet left,
+        ConstraintExpression clause, IEntityLookup lookup)
+    {
+        FunctionalExpression func = (FunctionalExpression)clause;
+        Object trait = lookup.lookupEntity(func.getFunction().getName());
+        if (!(trait instanceof TraitValue) || left.isEmpty()) {
+            return false;
+        }
+        TraitValue traitValue = (TraitValue)trait;
+        BindingMap first = left.iterator().next();
+        // each lookup goes through the index of its most selective bound position
+        int lookupCost = traitValue.size();
+        List<ConstraintExpression> args = func.getArgs();
+        for (int i = 0; i < args.size(); ++i) {
+            VariableReferenceExpression var = (VariableReferenceExpression)args.get(i);
+            if (var.isSpecialAnyVariable()) {
+                continue;
+            }
+            if (first.lookupEntity(var.getName()) != null) {
+                lookupCost = Math.min(lookupCost, traitValue.estimateCandidates(i));
+            }
+        }
+        return (long)left.size() * lookupCost > traitValue.size();
+    }
+
+    // Adds each map of the left set, extended with the bindings of each lookup
+    // result it pairs with, to the given result. The maps of the left set
+    // extend the bindings the lookup was evaluated with.
+    public static void join(BindingsSet left, BindingsSet lookups,
+        List<String> variables, BindingsSet result)
+    {
+        if (left.isEmpty()) {
+            return;
+        }
+        // the variables bound in the first map are the ones hashed on
+        List<String> keyVars = Lists.newArrayList();
+        BindingMap first = left.iterator().next();
+        for (String var : variables) {
+            if (first.lookupEntity(var) != null) {
+                keyVars.add(var);
+            }
+        }
+
+        Map<Integer, List<BindingMap>> buckets = Maps.newHashMap();
+        for (BindingMap lookup : lookups) {
+            int key = hashValues(lookup, keyVars, false);
+            List<BindingMap> bucket = buckets.get(key);
+            if (bucket == null) {
+                bucket = Lists.newArrayList();
+                buckets.put(key, bucket);
+            }
+            bucket.add(lookup);
+        }
+
+        List<BindingMap> unhashed = buckets.get(Entity.NO_HASH);
+        for (BindingMap theta : left) {
+            Iterable<BindingMap> candidates = lookups;
+            if (bindsAll(theta, keyVars)) {
+                int key = hashValues(theta, keyVars, true);
+                if (key != Entity.NO_HASH) {
+                    candidates = union(buckets.get(key), unhashed);
+                    if (candidates == null) {
+                        continue;
+                    }
+                }
+            }
+            // the variables of the lookup that theta leaves unbound
+            List<String> unbound = Lists.newArrayList();
+            for (String var : variables) {
+                if (theta.lookupEntity(var) == null) {
+                    unbound.add(var);
+                }
+            }
+            for (BindingMap lookup : candidates) {
+                if (pairs(theta, lookup, variables)) {
+                    BindingMap merge = lookup.withOnlyVars(unbound);
+                    merge.addBindings(theta);
+                    result.addEntry(merge);
+                }
+            }
+        }
+    }
+
+    private static boolean bindsAll(BindingMap theta, List<String> vars) {
+        for (String var : vars) {
+            if (theta.lookupEntity(var) == null) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // The values the map binds are hashed as they are passed to a lookup; if
+    // one of them can't be hashed, neither can the map
+    private static int hashValues(BindingMap theta, List<String> vars,
+        boolean asArguments)
+    {
+        int result = 1;
+        for (String var : vars) {
+            Object value = theta.lookupEntity(var);
+            if (asArguments) {
+                value = Entity.canonicalizeRepresentation(value);
+            }
+            int hash = Entity.comparisonHash(value);
+            if (hash == Entity.NO_HASH) {
+                return Entity.NO_HASH;
+            }
+            result = 31 * result + hash;
+        }
+        return result;
+    }
+
+    private static List<BindingMap> union(List<BindingMap> bucket,
+        List<BindingMap> unhashed)
+    {
+        if (bucket == null || unhashed == null) {
+            return (bucket == null) ? unhashed : bucket;
+        }
+        List<BindingMap> result = Lists.newArrayList(bucket);
+        result.addAll(unhashed);
+        return result;
+    }
+
+    // True if the lookup result has the values that theta binds
+    private static boolean pairs(BindingMap theta, BindingMap lookup,
+        List<String> variables)
+    {
+        for (String var : variables) {
+            Object value = theta.lookupEntity(var);
+            if (value == null) {
+                continue;
+            }
+            Object arg = Entity.canonicalizeRepresentation(value);
+            if (Entity.compareToWithLocations(arg, lookup.lookupEntity(var)) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
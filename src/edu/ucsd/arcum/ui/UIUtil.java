@@ -49,6 +49,10 @@ public class UIUtil
     }
     
     public static void notify(final String info, final String title) {
+        if (EclipseUtil.isHeadless()) {
+            System.out.printf("%s: %s%n", title, info);
+            return;
+        }
         Display.getDefault().syncExec(new Runnable() {
             public void run() {
                 final Shell shell = EclipseUtil.getShell();
@@ -58,6 +62,10 @@ public class UIUtil
     }
     
     public static void error(final String info, final String title) {
+        if (EclipseUtil.isHeadless()) {
+            System.err.printf("%s: %s%n", title, info);
+            return;
+        }
         Display.getDefault().syncExec(new Runnable() {
             public void run() {
                 final Shell shell = EclipseUtil.getShell();
@@ -44,6 +44,10 @@ public class MultiDictionary<K, V> implements Iterable<Map.Entry<K, List<V>>>
         return map.entrySet().iterator();
     }
 
+    public Set<Map.Entry<K, List<V>>> entrySet() {
+        return map.entrySet();
+    }
+
     public void putAll(K key, List<V> values) {
         for (V value: values) {
             addDefinition(key, value);
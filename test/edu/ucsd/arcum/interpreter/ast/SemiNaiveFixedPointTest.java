@@ -0,0 +1,225 @@
+package edu.ucsd.arcum.interpreter.ast;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.eclipse.core.runtime.CoreException;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import edu.ucsd.arcum.interpreter.query.EntityTuple;
+import edu.ucsd.arcum.interpreter.query.EntityType;
+import edu.ucsd.arcum.interpreter.query.TraitValue;
+
+// Evaluating recursive rules semi-naively finds the tuples that evaluating
+// every rule in full until nothing changes finds, with less work when the
+// recursion is linear
+public class SemiNaiveFixedPointTest
+{
+    private static final List<String> VARIABLES = Arrays.asList("a", "b");
+
+    @Test public void testTransitiveClosure() throws CoreException {
+        // path(a, b) :- edge(a, b) | edge(a, c) && path(c, b)
+        checkRandomGraphs(new Rule("path", "edge"), new Rule("path", "edge", "path"));
+    }
+
+    @Test public void testMutualRecursion() throws CoreException {
+        // odd(a, b) :- edge(a, b) | edge(a, c) && even(c, b)
+        // even(a, b) :- edge(a, c) && odd(c, b)
+        checkRandomGraphs(new Rule("odd", "edge"), new Rule("odd", "edge", "even"),
+            new Rule("even", "edge", "odd"));
+    }
+
+    @Test public void testNonLinearRecursion() throws CoreException {
+        // path(a, b) :- edge(a, b) | path(a, c) && path(c, b), which looks path up
+        // twice, so it is evaluated in full each round
+        checkRandomGraphs(new Rule("path", "edge"), new Rule("path", "path", "path"));
+    }
+
+    @Test public void testNonMonotonicRule() throws CoreException {
+        Rule step = new Rule("path", "edge", "path");
+        step.monotonic = false;
+        checkRandomGraphs(new Rule("path", "edge"), step);
+    }
+
+    @Test public void testLinearChainScansLess() throws CoreException {
+        Rule[] rules = { new Rule("path", "edge"), new Rule("path", "edge", "path") };
+        Map<String, TraitValue> naive = newTables(rules);
+        Map<String, TraitValue> semiNaive = newTables(rules);
+        for (int i = 0; i < 30; ++i) {
+            addEdge(naive, i, i + 1);
+            addEdge(semiNaive, i, i + 1);
+        }
+        int naiveWork = runNaive(naive, rules);
+        int semiNaiveWork = runSemiNaive(semiNaive, rules);
+        assertEquals(31 * 30 / 2, semiNaive.get("path").size());
+        assertSameTuples(naive, semiNaive);
+        assertTrue(semiNaiveWork * 5 < naiveWork);
+    }
+
+    private void checkRandomGraphs(Rule... rules) throws CoreException {
+        Random random = new Random(23);
+        for (int trial = 0; trial < 200; ++trial) {
+            int numNodes = 1 + random.nextInt(8);
+            int numEdges = random.nextInt(2 * numNodes + 1);
+            Map<String, TraitValue> naive = newTables(rules);
+            Map<String, TraitValue> semiNaive = newTables(rules);
+            for (int k = 0; k < numEdges; ++k) {
+                int from = random.nextInt(numNodes);
+                int to = random.nextInt(numNodes);
+                addEdge(naive, from, to);
+                addEdge(semiNaive, from, to);
+            }
+            runNaive(naive, rules);
+            runSemiNaive(semiNaive, rules);
+            assertSameTuples(naive, semiNaive);
+        }
+    }
+
+    // Evaluates every rule in full until none of them adds a tuple
+    private static int runNaive(Map<String, TraitValue> tables, Rule... rules) {
+        int work = 0;
+        boolean updated = true;
+        while (updated) {
+            updated = false;
+            for (Rule rule : rules) {
+                Map<String, TraitValue> added = Maps.newHashMap();
+                added.put(rule.head, newTrait(rule.head));
+                work += rule.evaluate(tables, null, added);
+                updated |= added.get(rule.head).size() != 0;
+            }
+        }
+        return work;
+    }
+
+    private static int runSemiNaive(final Map<String, TraitValue> tables, Rule... rules)
+        throws CoreException
+    {
+        final int[] work = new int[1];
+        new SemiNaiveFixedPoint<Rule>() {
+            protected TraitValue newDelta(Rule rule) {
+                return newTrait(rule.head);
+            }
+
+            protected int countLookups(Rule rule, Set<String> traitNames) {
+                int result = 0;
+                for (String name : rule.body) {
+                    if (traitNames.contains(name)) {
+                        ++result;
+                    }
+                }
+                return result;
+            }
+
+            protected boolean isMonotonicIn(Rule rule, Set<String> traitNames) {
+                return rule.monotonic;
+            }
+
+            protected void evaluate(Rule rule, Map<String, TraitValue> deltas,
+                Map<String, TraitValue> added)
+            {
+                work[0] += rule.evaluate(tables, deltas, added);
+            }
+        }.run(Arrays.asList(rules));
+        return work[0];
+    }
+
+    private static Map<String, TraitValue> newTables(Rule... rules) {
+        Map<String, TraitValue> result = Maps.newHashMap();
+        result.put("edge", newTrait("edge"));
+        for (Rule rule : rules) {
+            if (!result.containsKey(rule.head)) {
+                result.put(rule.head, newTrait(rule.head));
+            }
+        }
+        return result;
+    }
+
+    private static TraitValue newTrait(String name) {
+        TraitSignature type = TraitSignature.makeBuiltIn(name, new FormalParameter(
+            EntityType.STRING, "a"), new FormalParameter(EntityType.STRING, "b"));
+        return new TraitValue(name, type);
+    }
+
+    private static void addEdge(Map<String, TraitValue> tables, int from, int to) {
+        TraitValue edge = tables.get("edge");
+        edge.addTuple(tuple(edge, "n" + from, "n" + to));
+    }
+
+    private static EntityTuple tuple(TraitValue trait, Object a, Object b) {
+        return new EntityTuple(trait.getTraitType(), EntityTuple.values(VARIABLES, a, b),
+            null);
+    }
+
+    private static void assertSameTuples(Map<String, TraitValue> expected,
+        Map<String, TraitValue> actual)
+    {
+        assertEquals(expected.keySet(), actual.keySet());
+        for (String name : expected.keySet()) {
+            String expectedTuples = expected.get(name).toString();
+            assertEquals(name, expectedTuples, actual.get(name).toString());
+        }
+    }
+
+    // head(a, b) :- body[0](a, b), or head(a, b) :- body[0](a, c) && body[1](c, b)
+    private static class Rule
+    {
+        private final String head;
+        private final String[] body;
+        private boolean monotonic;
+
+        public Rule(String head, String... body) {
+            this.head = head;
+            this.body = body;
+            this.monotonic = true;
+        }
+
+        // Adds the tuples the rule derives to the head's table, and the new ones
+        // to added as well; returns the number of body tuples scanned
+        public int evaluate(Map<String, TraitValue> tables,
+            Map<String, TraitValue> deltas, Map<String, TraitValue> added)
+        {
+            int work = 0;
+            List<EntityTuple> derived = Lists.newArrayList();
+            TraitValue headTable = tables.get(head);
+            List<EntityTuple> first = lookup(tables, deltas, body[0]).getEntities();
+            for (EntityTuple left : first) {
+                ++work;
+                Object a = left.lookupEntity("a");
+                Object c = left.lookupEntity("b");
+                if (body.length == 1) {
+                    derived.add(tuple(headTable, a, c));
+                    continue;
+                }
+                for (EntityTuple right : lookup(tables, deltas, body[1]).getEntities()) {
+                    ++work;
+                    if (c.equals(right.lookupEntity("a"))) {
+                        derived.add(tuple(headTable, a, right.lookupEntity("b")));
+                    }
+                }
+            }
+            for (EntityTuple tuple : derived) {
+                if (headTable.addTuple(tuple)) {
+                    added.get(head).addTuple(tuple);
+                }
+            }
+            return work;
+        }
+
+        private static TraitValue lookup(Map<String, TraitValue> tables,
+            Map<String, TraitValue> deltas, String name)
+        {
+            if (deltas != null && deltas.containsKey(name)) {
+                return deltas.get(name);
+            }
+            return tables.get(name);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package edu.ucsd.arcum.interpreter.fragments;
+
+import static org.junit.Assert.*;
+
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.eclipse.jdt.core.dom.AST;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import edu.ucsd.arcum.interpreter.query.IEntityLookup;
+import edu.ucsd.arcum.interpreter.satisfier.BindingMap;
+
+// The assignment finds a match for every fragment exactly when some
+// assignment of the fragments to different entities exists, which the
+// first-match assignment it replaced only did when no fragment took another
+// fragment's only entity. Fragments are only matched against the entities the
+// search gets to.
+public class UnorderedAssignmentTest
+{
+    @Test public void testAgreesWithExhaustiveSearch() {
+        Random random = new Random(17);
+        int numAssigned = 0;
+        for (int trial = 0; trial < 5000; ++trial) {
+            int numEntities = 1 + random.nextInt(6);
+            int numFragments = 1 + random.nextInt(numEntities);
+            List<Object> entities = Lists.newArrayList();
+            for (int j = 0; j < numEntities; ++j) {
+                entities.add("e" + j);
+            }
+            List<ProgramFragment> fragments = Lists.newArrayList();
+            for (int i = 0; i < numFragments; ++i) {
+                Set<Object> accepted = Sets.newHashSet();
+                for (Object entity : entities) {
+                    if (random.nextInt(5) < 2) {
+                        accepted.add(entity);
+                    }
+                }
+                fragments.add(new OneOf(accepted));
+            }
+
+            BindingMap[] thetas = UnorderedAssignment.assign(fragments, entities);
+            boolean exists = existsAssignment(fragments, entities, 0, new BitSet());
+            assertEquals(exists, thetas != null);
+            if (firstMatchAssignment(fragments, entities)) {
+                assertNotNull(thetas);
+            }
+            if (thetas != null) {
+                ++numAssigned;
+                Set<Object> taken = Sets.newHashSet();
+                for (int i = 0; i < numFragments; ++i) {
+                    Object entity = thetas[i].getResult();
+                    assertTrue(((OneOf)fragments.get(i)).accepted.contains(entity));
+                    assertTrue(taken.add(entity));
+                }
+            }
+        }
+        // both outcomes are covered
+        assertTrue(numAssigned > 500 && numAssigned < 4500);
+    }
+
+    @Test public void testOnlyMatchesThePairsTheSearchNeeds() {
+        List<Object> entities = Lists.newArrayList();
+        List<ProgramFragment> fragments = Lists.newArrayList();
+        Set<Object> accepted = Sets.newHashSet();
+        for (int j = 0; j < 20; ++j) {
+            entities.add("e" + j);
+            accepted.add("e" + j);
+        }
+        List<OneOf> wildcards = Lists.newArrayList();
+        for (int i = 0; i < 20; ++i) {
+            OneOf fragment = new OneOf(accepted);
+            wildcards.add(fragment);
+            fragments.add(fragment);
+        }
+        assertNotNull(UnorderedAssignment.assign(fragments, entities));
+        // each fragment is only matched against the first entity that no other
+        // fragment took, which it matches: 20 pairs, not all 400
+        int numMatched = 0;
+        for (OneOf fragment : wildcards) {
+            numMatched += fragment.numMatched;
+        }
+        assertEquals(20, numMatched);
+    }
+
+    // The baseline's assignment: each fragment in turn takes the first entity
+    // it matches that no earlier fragment took
+    private static boolean firstMatchAssignment(List<ProgramFragment> fragments,
+        List<Object> entities)
+    {
+        List<Object> remaining = Lists.newArrayList(entities);
+        for (ProgramFragment fragment : fragments) {
+            boolean found = false;
+            for (int j = 0; j < remaining.size(); ++j) {
+                if (fragment.matches(remaining.get(j)) != null) {
+                    remaining.remove(j);
+                    found = true;
+                    break;
+                }
+            }
+            if (!found) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean existsAssignment(List<ProgramFragment> fragments,
+        List<Object> entities, int i, BitSet taken)
+    {
+        if (i == fragments.size()) {
+            return true;
+        }
+        for (int j = 0; j < entities.size(); ++j) {
+            if (!taken.get(j) && fragments.get(i).matches(entities.get(j)) != null) {
+                taken.set(j);
+                boolean found = existsAssignment(fragments, entities, i + 1, taken);
+                taken.clear(j);
+                if (found) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    // Matches the given entities, and counts how often it is matched
+    private static class OneOf extends ProgramFragment
+    {
+        private final Set<Object> accepted;
+        private int numMatched;
+
+        public OneOf(Set<Object> accepted) {
+            this.accepted = accepted;
+        }
+
+        @Override protected BindingMap matchesSimpleProperty(Object simple) {
+            ++numMatched;
+            return accepted.contains(simple) ? bindRoot(simple) : null;
+        }
+
+        @Override protected void buildString(StringBuilder buff) {
+            buff.append(accepted);
+        }
+
+        @Override public BindingMap generateNode(IEntityLookup lookup, AST ast) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.core.dom.*;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+import edu.ucsd.arcum.interpreter.parser.ASTVisitorAdaptor;
+
+// Times walks over every node of a corpus of compilation units: with the
+// traverse table, with a copy of the walker it replaced (a map from class to
+// descriptors, and getStructuralProperty for every descriptor), and with JDT's
+// own ASTVisitor. Run it as a Java application with the plug-in's libraries on
+// the class path, giving it the directory of the sources to parse (e.g. src).
+public class ASTTraverseTableBenchmark
+{
+    private static final int ROUNDS = 20;
+    private static final int WALKS_PER_ROUND = 10;
+
+    // The fastest round of each walk
+    private static final Map<String, Double> best = Maps.newLinkedHashMap();
+
+    public static void main(String[] args) throws IOException {
+        final List<CompilationUnit> corpus = Lists.newArrayList();
+        parseAll(new File(args.length > 0 ? args[0] : "src"), corpus);
+        System.out.printf("%d units%n", corpus.size());
+        for (int round = 1; round <= ROUNDS; ++round) {
+            measure(round, "table", new Walk() {
+                public int run() {
+                    CountingVisitor visitor = new CountingVisitor();
+                    ASTTraverseTable table = new ASTTraverseTable();
+                    for (CompilationUnit unit : corpus) {
+                        table.traverseAST(unit, visitor);
+                    }
+                    return visitor.count;
+                }
+            });
+            measure(round, "old", new Walk() {
+                public int run() {
+                    OldWalker walker = new OldWalker();
+                    for (CompilationUnit unit : corpus) {
+                        walker.traverseNode(unit);
+                    }
+                    return walker.count;
+                }
+            });
+            measure(round, "jdt", new Walk() {
+                public int run() {
+                    final int[] count = new int[1];
+                    ASTVisitor visitor = new ASTVisitor() {
+                        @Override public void preVisit(ASTNode node) {
+                            ++count[0];
+                        }
+                    };
+                    for (CompilationUnit unit : corpus) {
+                        unit.accept(visitor);
+                    }
+                    return count[0];
+                }
+            });
+        }
+        for (Map.Entry<String, Double> entry : best.entrySet()) {
+            System.out.printf("best  %-5s %6.1f ns/node%n", entry.getKey(), entry
+                .getValue());
+        }
+    }
+
+    private interface Walk
+    {
+        int run();
+    }
+
+    private static void measure(int round, String name, Walk walk) {
+        long start = System.nanoTime();
+        int nodes = 0;
+        for (int i = 0; i < WALKS_PER_ROUND; ++i) {
+            nodes += walk.run();
+        }
+        double perNode = (double)(System.nanoTime() - start) / nodes;
+        System.out.printf("round %d %-5s %8d nodes %6.1f ns/node%n", round, name, nodes,
+            perNode);
+        Double previous = best.get(name);
+        if (previous == null || perNode < previous) {
+            best.put(name, perNode);
+        }
+    }
+
+    private static class CountingVisitor extends ASTVisitorAdaptor
+    {
+        private int count;
+
+        @Override public boolean visitASTNode(ASTNode node,
+            StructuralPropertyDescriptor edge)
+        {
+            // optional children that are missing are visited as null
+            if (node == null) {
+                return false;
+            }
+            ++count;
+            return true;
+        }
+    }
+
+    // The traversal as it was before the table was indexed by node type
+    private static class OldWalker
+    {
+        private final Map<Class<?>, StructuralPropertyDescriptor[]> lookup = Maps
+            .newConcurrentHashMap();
+        private int count;
+
+        private void traverseNode(ASTNode node) {
+            ++count;
+            for (StructuralPropertyDescriptor spd : getProperties(node)) {
+                Object property = node.getStructuralProperty(spd);
+                if (spd.isChildProperty()) {
+                    if (property != null) {
+                        traverseNode((ASTNode)property);
+                    }
+                }
+                else if (spd.isChildListProperty()) {
+                    for (Object element : (List)property) {
+                        traverseNode((ASTNode)element);
+                    }
+                }
+            }
+        }
+
+        private StructuralPropertyDescriptor[] getProperties(ASTNode node) {
+            StructuralPropertyDescriptor[] result = lookup.get(node.getClass());
+            if (result == null) {
+                List properties = node.structuralPropertiesForType();
+                result = (StructuralPropertyDescriptor[])properties
+                    .toArray(new StructuralPropertyDescriptor[properties.size()]);
+                lookup.put(node.getClass(), result);
+            }
+            return result;
+        }
+    }
+
+    private static void parseAll(File file, List<CompilationUnit> corpus)
+        throws IOException
+    {
+        if (file.isDirectory()) {
+            for (File child : file.listFiles()) {
+                parseAll(child, corpus);
+            }
+        }
+        else if (file.getName().endsWith(".java")) {
+            ASTParser parser = ASTParser.newParser(AST.JLS3);
+            parser.setSource(read(file));
+            corpus.add((CompilationUnit)parser.createAST(null));
+        }
+    }
+
+    private static char[] read(File file) throws IOException {
+        StringBuilder buff = new StringBuilder();
+        Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+        try {
+            char[] chunk = new char[4096];
+            int n;
+            while ((n = reader.read(chunk)) > 0) {
+                buff.append(chunk, 0, n);
+            }
+        }
+        finally {
+            reader.close();
+        }
+        return buff.toString().toCharArray();
+    }
+}
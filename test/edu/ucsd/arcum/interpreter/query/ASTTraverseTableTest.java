@@ -0,0 +1,64 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import edu.ucsd.arcum.interpreter.parser.ASTVisitorAdaptor;
+
+// The table's walk reads the properties that getStructuralProperty reads, and
+// reaches the nodes that JDT's own visitor reaches, in the same order
+public class ASTTraverseTableTest
+{
+    private CompilationUnit unit;
+
+    @Before public void setUp() {
+        this.unit = TestPrograms.parse("A.java", TestPrograms.TYPES_SOURCE);
+    }
+
+    @Test public void testAccessorsReadTheProperties() {
+        int direct = 0;
+        for (ASTNode node : TestPrograms.collect(unit, ASTNode.class)) {
+            for (Object property : node.structuralPropertiesForType()) {
+                StructuralPropertyDescriptor spd = (StructuralPropertyDescriptor)property;
+                ChildAccessor accessor = ChildAccessor.forProperty(spd);
+                assertSame(spd.toString(), node.getStructuralProperty(spd), accessor
+                    .get(node));
+                // the getters are shared; the other accessors are made anew
+                if (accessor == ChildAccessor.forProperty(spd)) {
+                    ++direct;
+                }
+            }
+        }
+        assertTrue(direct > 0);
+    }
+
+    @Test public void testVisitsTheNodesJDTVisits() {
+        final List<ASTNode> expected = Lists.newArrayList();
+        unit.accept(new ASTVisitor(true) {
+            @Override public void preVisit(ASTNode node) {
+                expected.add(node);
+            }
+        });
+        final List<ASTNode> visited = Lists.newArrayList();
+        new ASTTraverseTable().traverseAST(unit, new ASTVisitorAdaptor() {
+            @Override public boolean visitASTNode(ASTNode node,
+                StructuralPropertyDescriptor edge)
+            {
+                if (node == null) {
+                    return false;
+                }
+                assertSame(node.getLocationInParent(), (node == unit) ? null : edge);
+                visited.add(node);
+                return true;
+            }
+        });
+        assertEquals(expected, visited);
+    }
+}
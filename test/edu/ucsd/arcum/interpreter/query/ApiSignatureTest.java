@@ -0,0 +1,44 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import static org.junit.Assert.*;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.junit.Test;
+
+import com.google.common.collect.Sets;
+
+public class ApiSignatureTest
+{
+    private static final String SOURCE = "package p;\n" //
+        + "public class C {\n" //
+        + "    public static final int N = 1;\n" //
+        + "    private int hidden;\n" //
+        + "    public int m(String s) { return s.length(); }\n" //
+        + "}\n";
+
+    @Test public void testBodiesAndPrivateMembersDontChangeTheSignature() {
+        String signature = signature(SOURCE);
+        assertEquals(signature, signature(SOURCE.replace("s.length()", "N + 2")));
+        assertEquals(signature, signature(SOURCE.replace("int hidden", "long hidden")));
+    }
+
+    @Test public void testMembersAndConstantsChangeTheSignature() {
+        String signature = signature(SOURCE);
+        assertFalse(signature.equals(signature(SOURCE.replace("N = 1", "N = 2"))));
+        assertFalse(signature.equals(signature(SOURCE.replace("String s", "Object s"))));
+        assertFalse(signature.equals(signature(SOURCE.replace("private int", "int"))));
+    }
+
+    @Test public void testNames() {
+        CompilationUnit unit = TestPrograms.parse("A.java", TestPrograms.TYPES_SOURCE);
+        assertEquals(Sets.newHashSet("A", "B", "Outer", "Inner", "Local"), ApiSignature
+            .declaredTypeNames(unit));
+        assertTrue(ApiSignature.referencedNames(unit).containsAll(
+            Sets.newHashSet("List", "Map", "String", "B", "Outer", "arg", "p")));
+        assertFalse(ApiSignature.referencedNames(unit).contains("C"));
+    }
+
+    private static String signature(String source) {
+        return ApiSignature.of(TestPrograms.parse("C.java", source));
+    }
+}
@@ -0,0 +1,67 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import edu.ucsd.arcum.interpreter.satisfier.BindingMap;
+import edu.ucsd.arcum.interpreter.satisfier.BindingsSet;
+
+// Searching the candidates in chunks on several threads finds the maps that
+// searching them all on one thread finds, in the same order
+public class ChunkedSearchTest
+{
+    private List<Object> entities;
+    private ExecutorService executor;
+
+    @Before public void setUp() {
+        this.entities = TestPrograms.entities(TestPrograms.parse("A.java",
+            TestPrograms.TYPES_SOURCE));
+        this.executor = Executors.newFixedThreadPool(4);
+    }
+
+    @After public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test public void testSameMapsInTheSameOrder() {
+        ChunkedSearch<Object> search = new ChunkedSearch<Object>() {
+            protected List<BindingMap> search(List<Object> chunk) {
+                return bindEach(chunk);
+            }
+        };
+        BindingsSet sequential = BindingsSet.newEmptySet();
+        for (BindingMap theta : bindEach(entities)) {
+            sequential.addEntry(theta);
+        }
+        // equal entities are spread over the chunks, so merging has to drop some
+        assertTrue(sequential.size() < entities.size());
+        for (int numChunks : new int[] { 1, 2, 3, 7, 16, entities.size() }) {
+            List<BindingMap> parallel = Lists.newArrayList(search.run(entities,
+                numChunks, executor));
+            assertEquals(sequential.size(), parallel.size());
+            int i = 0;
+            for (BindingMap theta : sequential) {
+                assertSame(theta.lookupEntity("x"), parallel.get(i++).lookupEntity("x"));
+            }
+        }
+    }
+
+    private static List<BindingMap> bindEach(List<Object> chunk) {
+        List<BindingMap> result = Lists.newArrayList();
+        for (Object entity : chunk) {
+            BindingMap theta = BindingMap.newEmptyMap();
+            theta.bind("x", entity, EntityType.ANY);
+            result.add(theta);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,76 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import static edu.ucsd.arcum.interpreter.query.TestPrograms.collect;
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.Map;
+
+import org.eclipse.jdt.core.dom.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+public class EntityTest
+{
+    private CompilationUnit unit;
+    private List<Object> entities;
+
+    @Before public void setUp() {
+        this.unit = TestPrograms.parse("A.java", TestPrograms.TYPES_SOURCE);
+        this.entities = TestPrograms.entities(unit);
+    }
+
+    @Test public void testEqualEntitiesHashAlike() {
+        for (Object thiz : entities) {
+            for (Object that : entities) {
+                if (Entity.compareTo(thiz, that) != 0) {
+                    continue;
+                }
+                int thizHash = Entity.comparisonHash(thiz);
+                int thatHash = Entity.comparisonHash(that);
+                if (thizHash != Entity.NO_HASH && thatHash != Entity.NO_HASH) {
+                    assertEquals(String.format("%s (%s) = %s (%s)", Entity
+                        .getDisplayString(thiz), thiz.getClass().getSimpleName(), Entity
+                        .getDisplayString(that), that.getClass().getSimpleName()),
+                        thizHash, thatHash);
+                }
+            }
+        }
+    }
+
+    @Test public void testTypesHashApart() {
+        Map<String, Integer> hashes = Maps.newHashMap();
+        for (Object entity : entities) {
+            if (entity instanceof ITypeBinding) {
+                ITypeBinding binding = (ITypeBinding)entity;
+                hashes.put(binding.getQualifiedName(), Entity.comparisonHash(binding));
+            }
+        }
+        assertTrue(hashes.size() > 10);
+        assertEquals(hashes.size(), Sets.newHashSet(hashes.values()).size());
+    }
+
+    @Test public void testVariableNamesAreNotHashed() {
+        for (SimpleName name : collect(unit, SimpleName.class)) {
+            if (name.getIdentifier().equals("arg")) {
+                assertEquals(0, Entity.compareTo(name, "arg"));
+                assertEquals(0, Entity.compareTo(name, name.resolveTypeBinding()));
+                assertEquals(Entity.NO_HASH, Entity.comparisonHash(name));
+                return;
+            }
+        }
+        fail("No use of arg found");
+    }
+
+    @Test public void testUnqualifiedName() {
+        assertEquals("B", Entity.unqualifiedName("p.B"));
+        assertEquals("Inner", Entity.unqualifiedName("p.Outer.Inner"));
+        assertEquals("Map<String,T>", Entity
+            .unqualifiedName("java.util.Map<java.lang.String, T>"));
+        assertEquals("?extendsB", Entity.unqualifiedName("? extends p.B"));
+        assertEquals("String[]", Entity.unqualifiedName("java.lang.String[]"));
+    }
+}
@@ -0,0 +1,107 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import java.util.Hashtable;
+import java.util.List;
+
+import org.eclipse.jdt.core.JavaCore;
+import org.eclipse.jdt.core.dom.*;
+
+import com.google.common.collect.Lists;
+
+import edu.ucsd.arcum.interpreter.fragments.ModifierElement;
+
+// Small programs parsed with their bindings resolved, without a workspace: the
+// classes of the running VM are the only library
+public class TestPrograms
+{
+    public static final String TYPES_SOURCE = "package p;\n" //
+        + "import java.util.List;\n" //
+        + "import java.util.Map;\n" //
+        + "class A {\n" //
+        + "    private B b;\n" //
+        + "    p.B qualified;\n" //
+        + "    List<String> list;\n" //
+        + "    java.util.List<String> qualifiedList;\n" //
+        + "    Map<String, Integer> map;\n" //
+        + "    String[] strings;\n" //
+        + "    int n;\n" //
+        + "    Outer.Inner inner;\n" //
+        + "    List<? extends B> wildcard;\n" //
+        + "    public void m(B arg, final int k) {\n" //
+        + "        class Local {}\n" //
+        + "        Local local = new Local();\n" //
+        + "        b = arg;\n" //
+        + "        n = n + k;\n" //
+        + "    }\n" //
+        + "}\n" //
+        + "class B {\n" //
+        + "    B next;\n" //
+        + "    A owner;\n" //
+        + "}\n" //
+        + "class Outer {\n" //
+        + "    static class Inner {\n" //
+        + "        Inner self;\n" //
+        + "    }\n" //
+        + "}\n";
+
+    private TestPrograms() {
+    }
+
+    public static CompilationUnit parse(String unitName, String source) {
+        ASTParser parser = ASTParser.newParser(AST.JLS3);
+        Hashtable<String, String> options = new Hashtable<String, String>();
+        JavaCore.setComplianceOptions(JavaCore.VERSION_1_5, options);
+        parser.setCompilerOptions(options);
+        parser.setKind(ASTParser.K_COMPILATION_UNIT);
+        parser.setEnvironment(new String[0], new String[0], null, true);
+        parser.setUnitName(unitName);
+        parser.setSource(source.toCharArray());
+        parser.setResolveBindings(true);
+        return (CompilationUnit)parser.createAST(null);
+    }
+
+    // The names, types, type declarations and modifiers of the unit, along with
+    // their bindings, their identifiers as strings, and unresolved copies of them
+    public static List<Object> entities(CompilationUnit unit) {
+        List<Object> result = Lists.newArrayList();
+        AST copies = AST.newAST(AST.JLS3);
+        for (Name name : collect(unit, Name.class)) {
+            result.add(name);
+            result.add(ASTNode.copySubtree(copies, name));
+            if (name instanceof SimpleName) {
+                result.add(((SimpleName)name).getIdentifier());
+            }
+        }
+        for (Type type : collect(unit, Type.class)) {
+            result.add(type);
+            result.add(ASTNode.copySubtree(copies, type));
+            if (type.resolveBinding() != null) {
+                result.add(type.resolveBinding());
+            }
+        }
+        for (AbstractTypeDeclaration decl : collect(unit, AbstractTypeDeclaration.class)) {
+            result.add(decl);
+            result.add(decl.resolveBinding());
+        }
+        for (Modifier modifier : collect(unit, Modifier.class)) {
+            result.add(modifier);
+            result.add(ModifierElement.lookup(modifier));
+            result.add(modifier.getKeyword().toString());
+        }
+        return result;
+    }
+
+    // The nodes of the given class in the subtree, in preorder
+    public static <T extends ASTNode> List<T> collect(ASTNode root, final Class<T> kind)
+    {
+        final List<T> result = Lists.newArrayList();
+        root.accept(new ASTVisitor() {
+            @Override public void preVisit(ASTNode node) {
+                if (kind.isInstance(node)) {
+                    result.add(kind.cast(node));
+                }
+            }
+        });
+        return result;
+    }
+}
@@ -0,0 +1,107 @@
+package edu.ucsd.arcum.interpreter.query;
+
+import static edu.ucsd.arcum.interpreter.query.TestPrograms.collect;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import edu.ucsd.arcum.exceptions.SourceLocation;
+import edu.ucsd.arcum.interpreter.ast.FormalParameter;
+import edu.ucsd.arcum.interpreter.ast.TraitSignature;
+import edu.ucsd.arcum.interpreter.ast.expressions.VariableReferenceExpression;
+import edu.ucsd.arcum.interpreter.satisfier.BindingMap;
+import edu.ucsd.arcum.interpreter.satisfier.BindingsSet;
+
+// The lookups that go through the indexes find what looking at every tuple finds
+public class TraitValueTest
+{
+    private CompilationUnit unit;
+    private List<Object> entities;
+
+    @Before public void setUp() {
+        this.unit = TestPrograms.parse("A.java", TestPrograms.TYPES_SOURCE);
+        this.entities = TestPrograms.entities(unit);
+    }
+
+    @Test public void testTypeLookups() {
+        // hasField(t, f): each field and the type declaring it
+        TraitSignature type = TraitSignature.makeBuiltIn("hasField",
+            new FormalParameter(EntityType.TYPE, "t"), new FormalParameter(
+                EntityType.FIELD, "f"));
+        TraitValue trait = new TraitValue("hasField", type);
+        List<FieldDeclaration> fields = collect(unit, FieldDeclaration.class);
+        int half = fields.size() / 2;
+        for (FieldDeclaration field : fields.subList(0, half)) {
+            trait.addTuple(hasField(type, field));
+        }
+        checkLookups(trait, variable("f"));
+        // the tuples added after the index is made are filed as well
+        for (FieldDeclaration field : fields.subList(half, fields.size())) {
+            trait.addTuple(hasField(type, field));
+        }
+        checkLookups(trait, variable("f"));
+    }
+
+    @Test public void testTypeNodeLookups() {
+        // declaredAs(f, t): each field and the type it's declared with
+        TraitSignature type = TraitSignature.makeBuiltIn("declaredAs",
+            new FormalParameter(EntityType.TYPE, "t"), new FormalParameter(
+                EntityType.FIELD, "f"));
+        TraitValue trait = new TraitValue("declaredAs", type);
+        for (FieldDeclaration field : collect(unit, FieldDeclaration.class)) {
+            trait.addTuple(new EntityTuple(type, EntityTuple.values(Arrays.asList("t",
+                "f"), field.getType(), field), null));
+        }
+        checkLookups(trait, variable("f"));
+    }
+
+    @Test public void testNameLookups() {
+        // named(n, e): each name and its expression, some of which can't be hashed
+        TraitSignature type = TraitSignature.makeBuiltIn("named",
+            new FormalParameter(EntityType.EXPR, "n"), new FormalParameter(
+                EntityType.EXPR, "e"));
+        TraitValue trait = new TraitValue("named", type);
+        for (SimpleName name : collect(unit, SimpleName.class)) {
+            trait.addTuple(new EntityTuple(type, EntityTuple.values(Arrays.asList("n",
+                "e"), name, name.getParent()), null));
+        }
+        checkLookups(trait, variable("e"));
+    }
+
+    private static EntityTuple hasField(TraitSignature type, FieldDeclaration field) {
+        AbstractTypeDeclaration owner = (AbstractTypeDeclaration)field.getParent();
+        return new EntityTuple(type, EntityTuple.values(Arrays.asList("t", "f"), owner
+            .resolveBinding(), field), null);
+    }
+
+    private static VariablePlaceholder variable(String name) {
+        return new VariablePlaceholder(new VariableReferenceExpression(
+            new SourceLocation(), name), EntityType.EXPR);
+    }
+
+    // Looks each entity up as the first argument of the trait
+    private void checkLookups(TraitValue trait, VariablePlaceholder second) {
+        List<FormalParameter> formals = trait.getTraitType().getFormals();
+        int found = 0;
+        for (Object entity : entities) {
+            List<Object> args = Arrays.<Object>asList(entity, second);
+            BindingsSet indexed = trait.getMatches(args, BindingMap.newEmptyMap());
+            BindingsSet scanned = BindingsSet.newEmptySet();
+            for (EntityTuple tuple : trait.getEntities()) {
+                BindingMap theta = tuple.matches(formals, args);
+                if (theta != null) {
+                    scanned.addEntry(theta);
+                }
+            }
+            assertEquals(Entity.getDisplayString(entity), scanned.size(), indexed.size());
+            assertTrue(Entity.getDisplayString(entity), scanned.isEquivalentTo(indexed));
+            found += indexed.size();
+        }
+        assertTrue(found > 0);
+    }
+}
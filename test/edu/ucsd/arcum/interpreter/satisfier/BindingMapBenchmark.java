@@ -0,0 +1,98 @@
+package edu.ucsd.arcum.interpreter.satisfier;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.Collections;
+import java.util.Set;
+
+import edu.ucsd.arcum.interpreter.query.EntityType;
+
+// Times the merges a conjunction makes, and counts the bytes they allocate, for
+// the chained maps and for the TreeMaps they replace. Run it as a Java
+// application with the test classes and the plug-in's libraries on the class
+// path; the byte counts need a HotSpot VM.
+public class BindingMapBenchmark
+{
+    private static final int GLOBALS = 12;
+    private static final int MERGES = 200000;
+    private static final int ROUNDS = 5;
+    private static final String[] TYPES = new String[64];
+    private static final String[] FIELDS = new String[64];
+
+    static {
+        for (int i = 0; i < 64; ++i) {
+            TYPES[i] = "t" + i;
+            FIELDS[i] = "f" + i;
+        }
+    }
+
+    public static void main(String[] args) {
+        for (int round = 1; round <= ROUNDS; ++round) {
+            measure(round, "TreeMaps", new Runnable() {
+                public void run() {
+                    runTreeMaps();
+                }
+            });
+            measure(round, "chains", new Runnable() {
+                public void run() {
+                    runChains();
+                }
+            });
+        }
+    }
+
+    // The globals are bound once; each merge binds a variable of the first
+    // conjunct with one of the second, and then drops the first one
+    private static void runChains() {
+        BindingMap globals = BindingMap.newEmptyMap();
+        for (int i = 0; i < GLOBALS; ++i) {
+            globals.bind("global" + i, "g" + i, EntityType.TRAIT);
+        }
+        Set<String> removed = Collections.singleton("t");
+        for (int i = 0; i < MERGES; ++i) {
+            BindingMap left = BindingMap.newEmptyMap();
+            left.bind("t", TYPES[i & 63], EntityType.TYPE);
+            BindingMap right = BindingMap.newEmptyMap();
+            right.bind("f", FIELDS[i & 63], EntityType.FIELD);
+            BindingMap merged = globals.consistentMerge(left).consistentMerge(right);
+            merged.withVarsRemoved(removed);
+        }
+    }
+
+    private static void runTreeMaps() {
+        TreeMapBindingMap globals = new TreeMapBindingMap();
+        for (int i = 0; i < GLOBALS; ++i) {
+            globals.bind("global" + i, "g" + i, EntityType.TRAIT);
+        }
+        Set<String> removed = Collections.singleton("t");
+        for (int i = 0; i < MERGES; ++i) {
+            TreeMapBindingMap left = new TreeMapBindingMap();
+            left.bind("t", TYPES[i & 63], EntityType.TYPE);
+            TreeMapBindingMap right = new TreeMapBindingMap();
+            right.bind("f", FIELDS[i & 63], EntityType.FIELD);
+            TreeMapBindingMap merged = globals.consistentMerge(left).consistentMerge(
+                right);
+            merged.withVarsRemoved(removed);
+        }
+    }
+
+    private static void measure(int round, String name, Runnable workload) {
+        long bytesBefore = allocatedBytes();
+        long start = System.nanoTime();
+        workload.run();
+        long elapsed = System.nanoTime() - start;
+        long bytes = allocatedBytes() - bytesBefore;
+        System.out.printf("round %d %-8s %6.1f ns/merge %6d bytes/merge%n", round,
+            name, (double)elapsed / MERGES, (bytesBefore < 0) ? -1 : bytes / MERGES);
+    }
+
+    // The bytes allocated by this thread so far, or -1 if the VM can't tell
+    private static long allocatedBytes() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        if (threads instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean)threads)
+                .getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,104 @@
+package edu.ucsd.arcum.interpreter.satisfier;
+
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Sets;
+
+import edu.ucsd.arcum.interpreter.query.EntityType;
+
+// The chained maps bind, type, merge and order their variables the way the
+// TreeMaps they replace did
+public class BindingMapTest
+{
+    private static final String[] NAMES = { "a", "b", "c", "d", "e", "f" };
+    private static final String[] VALUES = { "x", "y", "z" };
+    private static final EntityType[] TYPES = { EntityType.ANY, EntityType.TYPE, null };
+
+    private final Random random = new Random(19);
+    private final List<BindingMap> maps = Lists.newArrayList();
+    private final List<TreeMapBindingMap> expected = Lists.newArrayList();
+
+    @Test public void testRandomOperations() {
+        add(BindingMap.newEmptyMap(), new TreeMapBindingMap());
+        add(new BindingMap("r"), new TreeMapBindingMap("r"));
+        for (int step = 0; step < 5000; ++step) {
+            int i = random.nextInt(maps.size());
+            int j = random.nextInt(maps.size());
+            BindingMap theta = maps.get(i);
+            TreeMapBindingMap old = expected.get(i);
+            switch (random.nextInt(6)) {
+            case 0: {
+                String name = pick(NAMES);
+                String value = pick(VALUES);
+                EntityType type = pick(TYPES);
+                BindingMap bound = theta.consistentMerge(BindingMap.newEmptyMap());
+                TreeMapBindingMap oldBound = old.consistentMerge(new TreeMapBindingMap());
+                bound.bind(name, value, type);
+                oldBound.bind(name, value, type);
+                add(bound, oldBound);
+                break;
+            }
+            case 1:
+                if (Sets.intersection(old.bindings.keySet(),
+                    expected.get(j).bindings.keySet()).isEmpty())
+                {
+                    BindingMap added = theta.withVarsRemoved(Collections
+                        .<String>emptySet());
+                    TreeMapBindingMap oldAdded = old.withVarsRemoved(Collections
+                        .<String>emptySet());
+                    added.addBindings(maps.get(j));
+                    oldAdded.addBindings(expected.get(j));
+                    add(added, oldAdded);
+                }
+                break;
+            case 2: {
+                BindingMap merged = theta.consistentMerge(maps.get(j));
+                TreeMapBindingMap oldMerged = old.consistentMerge(expected.get(j));
+                assertEquals(oldMerged == null, merged == null);
+                if (merged != null) {
+                    add(merged, oldMerged);
+                }
+                break;
+            }
+            case 3: {
+                Set<String> removed = Sets.newHashSet(pick(NAMES), pick(NAMES));
+                add(theta.withVarsRemoved(removed), old.withVarsRemoved(removed));
+                break;
+            }
+            case 4: {
+                String name = pick(NAMES);
+                BindingMap result = new BindingMap("r").consistentMerge(theta);
+                TreeMapBindingMap oldResult = new TreeMapBindingMap("r")
+                    .consistentMerge(old);
+                result.bindResultAs(name);
+                oldResult.bindResultAs(name);
+                add(result, oldResult);
+                break;
+            }
+            default:
+                assertEquals(Integer.signum(old.compareTo(expected.get(j))), Integer
+                    .signum(theta.compareTo(maps.get(j))));
+            }
+        }
+    }
+
+    private void add(BindingMap theta, TreeMapBindingMap old) {
+        assertEquals(old.types, theta.getTypes());
+        for (String name : NAMES) {
+            assertEquals(old.lookupEntity(name), theta.lookupEntity(name));
+        }
+        assertEquals(old.bindings.isEmpty(), theta.isEmpty());
+        assertEquals(old.bindings.size(), theta.compareTo(BindingMap.newEmptyMap()));
+        maps.add(theta);
+        expected.add(old);
+    }
+
+    private <T> T pick(T[] choices) {
+        return choices[random.nextInt(choices.length)];
+    }
+}
@@ -0,0 +1,73 @@
+package edu.ucsd.arcum.interpreter.satisfier;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.CompilationUnit;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import edu.ucsd.arcum.interpreter.query.EntityType;
+import edu.ucsd.arcum.interpreter.query.TestPrograms;
+
+// A set filed by fingerprints keeps the maps that comparing each map being
+// added with every map already kept would keep, in the same order
+public class BindingsSetTest
+{
+    private List<Object> entities;
+
+    @Before public void setUp() {
+        CompilationUnit unit = TestPrograms.parse("A.java", TestPrograms.TYPES_SOURCE);
+        this.entities = TestPrograms.entities(unit);
+    }
+
+    @Test public void testSingleBindings() {
+        List<BindingMap> maps = Lists.newArrayList();
+        for (Object entity : entities) {
+            maps.add(map("x", entity));
+        }
+        checkSet(maps);
+    }
+
+    @Test public void testPairsOfBindings() {
+        List<BindingMap> maps = Lists.newArrayList();
+        for (int i = 0; i < entities.size(); i += 3) {
+            for (int j = 1; j < entities.size(); j += 5) {
+                BindingMap theta = map("x", entities.get(i));
+                theta.bind("y", entities.get(j), EntityType.ANY);
+                maps.add(theta);
+            }
+        }
+        checkSet(maps);
+    }
+
+    private static BindingMap map(String variable, Object entity) {
+        BindingMap result = BindingMap.newEmptyMap();
+        result.bind(variable, entity, EntityType.ANY);
+        return result;
+    }
+
+    private static void checkSet(List<BindingMap> maps) {
+        List<BindingMap> kept = Lists.newArrayList();
+        nextMap: for (BindingMap theta : maps) {
+            for (BindingMap member : kept) {
+                if (member.compareTo(theta) == 0) {
+                    continue nextMap;
+                }
+            }
+            kept.add(theta);
+        }
+        BindingsSet set = BindingsSet.newEmptySet();
+        for (BindingMap theta : maps) {
+            set.addEntry(theta);
+        }
+        assertTrue(kept.size() < maps.size());
+        assertEquals(kept, Lists.newArrayList(set));
+        for (BindingMap theta : maps) {
+            assertTrue(set.contains(theta));
+        }
+    }
+}
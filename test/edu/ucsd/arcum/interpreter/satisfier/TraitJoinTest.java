@@ -0,0 +1,110 @@
+package edu.ucsd.arcum.interpreter.satisfier;
+
+import static edu.ucsd.arcum.interpreter.query.TestPrograms.collect;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.List;
+
+import org.eclipse.jdt.core.dom.*;
+import org.junit.Before;
+import org.junit.Test;
+
+import com.google.common.collect.Lists;
+
+import edu.ucsd.arcum.exceptions.SourceLocation;
+import edu.ucsd.arcum.interpreter.ast.FormalParameter;
+import edu.ucsd.arcum.interpreter.ast.TraitSignature;
+import edu.ucsd.arcum.interpreter.ast.expressions.VariableReferenceExpression;
+import edu.ucsd.arcum.interpreter.query.*;
+
+// Joining a conjunction's maps with a trait lookup gives the maps that looking
+// the trait up once for each map gives, as the Satisfier does when it doesn't
+// join
+public class TraitJoinTest
+{
+    private static final List<String> VARIABLES = Arrays.asList("t", "f");
+
+    private List<Object> entities;
+    private TraitValue hasField;
+
+    @Before public void setUp() {
+        CompilationUnit unit = TestPrograms.parse("A.java", TestPrograms.TYPES_SOURCE);
+        this.entities = TestPrograms.entities(unit);
+        TraitSignature type = TraitSignature.makeBuiltIn("hasField",
+            new FormalParameter(EntityType.TYPE, "t"), new FormalParameter(
+                EntityType.FIELD, "f"));
+        this.hasField = new TraitValue("hasField", type);
+        for (FieldDeclaration field : collect(unit, FieldDeclaration.class)) {
+            AbstractTypeDeclaration owner = (AbstractTypeDeclaration)field.getParent();
+            hasField.addTuple(new EntityTuple(type, EntityTuple.values(VARIABLES, owner
+                .resolveBinding(), field), null));
+        }
+    }
+
+    @Test public void testJoinOnBoundType() {
+        // in binds a variable the lookup doesn't use; the maps bind t to each
+        // entity, some of which can't be hashed
+        BindingMap in = BindingMap.newEmptyMap();
+        in.bind("z", "context", EntityType.STRING);
+        BindingsSet left = BindingsSet.newEmptySet();
+        for (Object entity : entities) {
+            BindingMap theta = BindingMap.newEmptyMap();
+            theta.bind("t", entity, EntityType.ANY);
+            theta.addBindings(in);
+            left.addEntry(theta);
+        }
+        assertTrue(checkJoin(left, in) > 0);
+    }
+
+    @Test public void testJoinWithBoundLookup() {
+        // in binds t, so the lookup only finds the fields of that type
+        int found = 0;
+        for (Object entity : entities) {
+            if (!(entity instanceof ITypeBinding)) {
+                continue;
+            }
+            BindingMap in = BindingMap.newEmptyMap();
+            in.bind("t", entity, EntityType.TYPE);
+            BindingsSet left = BindingsSet.newEmptySet();
+            for (String name : Arrays.asList("a", "b", "c")) {
+                BindingMap theta = BindingMap.newEmptyMap();
+                theta.bind("z", name, EntityType.STRING);
+                theta.addBindings(in);
+                left.addEntry(theta);
+            }
+            found += checkJoin(left, in);
+        }
+        assertTrue(found > 0);
+    }
+
+    // Returns the number of maps found
+    private int checkJoin(BindingsSet left, BindingMap in) {
+        BindingsSet perMap = BindingsSet.newEmptySet();
+        for (BindingMap theta : left) {
+            perMap.addAll(hasField.getMatches(args(theta), theta));
+        }
+        BindingsSet lookups = hasField.getMatches(args(in), in);
+        BindingsSet joined = BindingsSet.newEmptySet();
+        TraitJoin.join(left, lookups, VARIABLES, joined);
+        assertEquals(perMap.size(), joined.size());
+        assertTrue(perMap.isEquivalentTo(joined));
+        return perMap.size();
+    }
+
+    // The arguments the Satisfier passes to the trait under the given bindings
+    private static List<Object> args(BindingMap theta) {
+        List<Object> result = Lists.newArrayList();
+        for (String var : VARIABLES) {
+            Object value = theta.lookupEntity(var);
+            if (value == null) {
+                result.add(new VariablePlaceholder(new VariableReferenceExpression(
+                    new SourceLocation(), var), EntityType.TYPE));
+            }
+            else {
+                result.add(Entity.canonicalizeRepresentation(value));
+            }
+        }
+        return result;
+    }
+}
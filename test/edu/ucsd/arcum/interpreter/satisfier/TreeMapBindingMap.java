@@ -0,0 +1,127 @@
+package edu.ucsd.arcum.interpreter.satisfier;
+
+import java.util.*;
+import java.util.Map.Entry;
+
+import edu.ucsd.arcum.interpreter.fragments.VariableNode;
+import edu.ucsd.arcum.interpreter.query.Entity;
+import edu.ucsd.arcum.interpreter.query.EntityType;
+
+// The BindingMap as it was before its bindings were kept in chains: two TreeMaps,
+// copied in full by each merge. The tests check the chains against it, and the
+// benchmark measures what it allocates.
+class TreeMapBindingMap implements Comparable<TreeMapBindingMap>
+{
+    private static final String SPECIAL_RESULT_LABEL = "<RESULT>";
+
+    final SortedMap<String, Object> bindings;
+    final SortedMap<String, EntityType> types;
+
+    public TreeMapBindingMap() {
+        this.bindings = new TreeMap<String, Object>();
+        this.types = new TreeMap<String, EntityType>();
+    }
+
+    public TreeMapBindingMap(Object specialResult) {
+        this();
+        bind(SPECIAL_RESULT_LABEL, specialResult, EntityType.ANY);
+    }
+
+    public void bind(String id, Object entity, EntityType type) {
+        if (!id.equals(VariableNode.DONT_CARE)) {
+            bindings.put(id, entity);
+            types.put(id, type);
+        }
+    }
+
+    public void bindResultAs(String name) {
+        bindings.put(name, bindings.get(SPECIAL_RESULT_LABEL));
+    }
+
+    public void addBindings(TreeMapBindingMap theta) {
+        for (Entry<String, Object> entry : theta.bindings.entrySet()) {
+            String newKey = entry.getKey();
+            if (isTempName(newKey)) {
+                continue;
+            }
+            if (this.bindings.containsKey(newKey)) {
+                throw new IllegalStateException(newKey + " is multiple-bound");
+            }
+            bindings.put(newKey, entry.getValue());
+        }
+    }
+
+    private boolean isTempName(String key) {
+        return key.equals(SPECIAL_RESULT_LABEL);
+    }
+
+    public TreeMapBindingMap consistentMerge(TreeMapBindingMap that) {
+        TreeMapBindingMap result = new TreeMapBindingMap();
+        for (Entry<String, Object> thisEntry : this.bindings.entrySet()) {
+            String thisID = thisEntry.getKey();
+            Object thisEntity = thisEntry.getValue();
+            if (!isTempName(thisID) && that.bindings.containsKey(thisID)) {
+                Object thatEntity = that.bindings.get(thisID);
+                if (Entity.compareTo(thisEntity, thatEntity) == 0) {
+                    result.bind(thisID, thatEntity, that.types.get(thisID));
+                }
+                else {
+                    return null;
+                }
+            }
+            else {
+                result.bind(thisID, thisEntity, this.types.get(thisID));
+            }
+        }
+        for (Entry<String, Object> thatEntry : that.bindings.entrySet()) {
+            String thatID = thatEntry.getKey();
+            if (isTempName(thatID))
+                continue;
+            if (!result.bindings.containsKey(thatID)) {
+                result.bind(thatID, thatEntry.getValue(), that.types.get(thatID));
+            }
+        }
+        return result;
+    }
+
+    public TreeMapBindingMap withVarsRemoved(Set<String> varNames) {
+        TreeMapBindingMap result = new TreeMapBindingMap();
+        for (Entry<String, Object> entry : this.bindings.entrySet()) {
+            String id = entry.getKey();
+            if (!varNames.contains(id)) {
+                result.bind(id, entry.getValue(), this.types.get(id));
+            }
+        }
+        return result;
+    }
+
+    public Object lookupEntity(String name) {
+        return bindings.get(name);
+    }
+
+    @Override public int compareTo(TreeMapBindingMap that) {
+        if (this == that) {
+            return 0;
+        }
+        int thisSize = this.bindings.size();
+        int thatSize = that.bindings.size();
+        if (thisSize != thatSize) {
+            return thisSize - thatSize;
+        }
+        Iterator<String> i = this.bindings.keySet().iterator();
+        Iterator<String> j = that.bindings.keySet().iterator();
+        while (i.hasNext()) {
+            String thisID = i.next();
+            String thatID = j.next();
+            if (!thisID.equals(thatID)) {
+                return thisID.compareTo(thatID);
+            }
+            int k = Entity.compareToWithLocations(this.bindings.get(thisID), that.bindings
+                .get(thisID));
+            if (k != 0) {
+                return k;
+            }
+        }
+        return 0;
+    }
+}